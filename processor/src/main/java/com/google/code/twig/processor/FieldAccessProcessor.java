@@ -0,0 +1,235 @@
+package com.google.code.twig.processor;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic.Kind;
+import javax.tools.JavaFileObject;
+
+/**
+ * Generates a FieldAccessorFactory for every class annotated with @Entity,
+ * @Embedded or @Embed so that the datastore can read and write the fields
+ * without reflection. Private and final fields and those with a type the
+ * generated class cannot see are left to the default method handle
+ * accessors at runtime.
+ *
+ * @see com.google.code.twig.util.FieldAccessorFactory
+ */
+@SupportedAnnotationTypes({
+	"com.google.code.twig.annotation.Entity",
+	"com.google.code.twig.annotation.Embedded",
+	"com.google.code.twig.annotation.Embed"
+})
+public class FieldAccessProcessor extends AbstractProcessor
+{
+	// must match FieldAccessorFactory.SUFFIX which is not on the processor path
+	static final String SUFFIX = "_FieldAccessors";
+
+	private final Set<String> generated = new HashSet<String>();
+
+	@Override
+	public SourceVersion getSupportedSourceVersion()
+	{
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment round)
+	{
+		for (TypeElement annotation : annotations)
+		{
+			for (Element element : round.getElementsAnnotatedWith(annotation))
+			{
+				// annotations on fields are handled by their declaring class
+				if (element.getKind() == ElementKind.CLASS)
+				{
+					process((TypeElement) element);
+				}
+			}
+		}
+
+		// other processors may also be interested in these annotations
+		return false;
+	}
+
+	private void process(TypeElement type)
+	{
+		String binaryName = processingEnv.getElementUtils().getBinaryName(type).toString();
+		String packageName = processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+		if (!generated.add(binaryName) || !isVisible(type, packageName))
+		{
+			return;
+		}
+
+		List<VariableElement> fields = new ArrayList<VariableElement>();
+		for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements()))
+		{
+			Set<Modifier> modifiers = field.getModifiers();
+			if (modifiers.contains(Modifier.STATIC) ||
+					modifiers.contains(Modifier.PRIVATE) ||
+					modifiers.contains(Modifier.FINAL) ||
+					field.getSimpleName().toString().startsWith("$") ||
+					!isVisible(field.asType(), packageName))
+			{
+				continue;
+			}
+			fields.add(field);
+		}
+
+		if (fields.isEmpty())
+		{
+			return;
+		}
+
+		String simpleName = (packageName.length() == 0 ? binaryName : binaryName.substring(packageName.length() + 1)) + SUFFIX;
+		String qualifiedName = packageName.length() == 0 ? simpleName : packageName + "." + simpleName;
+
+		try
+		{
+			JavaFileObject source = processingEnv.getFiler().createSourceFile(qualifiedName, type);
+			PrintWriter writer = new PrintWriter(source.openWriter());
+			try
+			{
+				write(writer, packageName, simpleName, type, fields);
+			}
+			finally
+			{
+				writer.close();
+			}
+		}
+		catch (IOException e)
+		{
+			processingEnv.getMessager().printMessage(Kind.ERROR, "Could not generate field accessors: " + e, type);
+		}
+	}
+
+	// the generated class is a top level class in the package of the entity so
+	// can only see public types and those in the same package that are not private
+	private boolean isVisible(TypeElement type, String packageName)
+	{
+		String typePackage = processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+		Element element = type;
+		while (element instanceof TypeElement)
+		{
+			TypeElement current = (TypeElement) element;
+			Set<Modifier> modifiers = current.getModifiers();
+			if (modifiers.contains(Modifier.PRIVATE))
+			{
+				return false;
+			}
+			if (!modifiers.contains(Modifier.PUBLIC) && !typePackage.equals(packageName))
+			{
+				return false;
+			}
+			if (current.getNestingKind() == NestingKind.LOCAL || current.getNestingKind() == NestingKind.ANONYMOUS)
+			{
+				return false;
+			}
+			element = current.getEnclosingElement();
+		}
+		return true;
+	}
+
+	// fields are cast to their erased type which may not be visible to the generated class
+	private boolean isVisible(TypeMirror type, String packageName)
+	{
+		TypeMirror erased = processingEnv.getTypeUtils().erasure(type);
+		while (erased.getKind() == TypeKind.ARRAY)
+		{
+			erased = ((ArrayType) erased).getComponentType();
+		}
+		if (erased.getKind() == TypeKind.DECLARED)
+		{
+			return isVisible((TypeElement) ((DeclaredType) erased).asElement(), packageName);
+		}
+		return true;
+	}
+
+	private void write(PrintWriter writer, String packageName, String simpleName, TypeElement type, List<VariableElement> fields)
+	{
+		String typeName = type.getQualifiedName().toString();
+
+		if (packageName.length() > 0)
+		{
+			writer.println("package " + packageName + ";");
+			writer.println();
+		}
+		writer.println("import java.lang.reflect.Field;");
+		writer.println();
+		writer.println("import com.google.code.twig.util.FieldAccessor;");
+		writer.println("import com.google.code.twig.util.FieldAccessorFactory;");
+		writer.println();
+		writer.println("/**");
+		writer.println(" * Generated by " + getClass().getName() + " for {@link " + typeName + "}");
+		writer.println(" */");
+		writer.println("@SuppressWarnings({\"unchecked\", \"rawtypes\"})");
+		writer.println("public final class " + simpleName + " implements FieldAccessorFactory");
+		writer.println("{");
+		writer.println("\t@Override");
+		writer.println("\tpublic FieldAccessor accessor(Field field)");
+		writer.println("\t{");
+		writer.println("\t\tString name = field.getName();");
+		for (VariableElement field : fields)
+		{
+			String name = field.getSimpleName().toString();
+			writer.println("\t\tif (\"" + name + "\".equals(name))");
+			writer.println("\t\t{");
+			writer.println("\t\t\treturn new FieldAccessor(field)");
+			writer.println("\t\t\t{");
+			writer.println("\t\t\t\t@Override");
+			writer.println("\t\t\t\tpublic Object get(Object instance)");
+			writer.println("\t\t\t\t{");
+			writer.println("\t\t\t\t\treturn ((" + typeName + ") instance)." + name + ";");
+			writer.println("\t\t\t\t}");
+			writer.println();
+			writer.println("\t\t\t\t@Override");
+			writer.println("\t\t\t\tpublic void set(Object instance, Object value)");
+			writer.println("\t\t\t\t{");
+			TypeMirror fieldType = field.asType();
+			if (fieldType.getKind().isPrimitive())
+			{
+				// only unbox the exact wrapper and leave conversions to reflection
+				String wrapper = processingEnv.getTypeUtils().boxedClass((PrimitiveType) fieldType).getQualifiedName().toString();
+				writer.println("\t\t\t\t\tif (value instanceof " + wrapper + ")");
+				writer.println("\t\t\t\t\t{");
+				writer.println("\t\t\t\t\t\t((" + typeName + ") instance)." + name + " = (" + wrapper + ") value;");
+				writer.println("\t\t\t\t\t}");
+				writer.println("\t\t\t\t\telse");
+				writer.println("\t\t\t\t\t{");
+				writer.println("\t\t\t\t\t\tsetByReflection(instance, value);");
+				writer.println("\t\t\t\t\t}");
+			}
+			else
+			{
+				String erased = processingEnv.getTypeUtils().erasure(fieldType).toString();
+				writer.println("\t\t\t\t\t((" + typeName + ") instance)." + name + " = (" + erased + ") value;");
+			}
+			writer.println("\t\t\t\t}");
+			writer.println("\t\t\t};");
+			writer.println("\t\t}");
+		}
+		writer.println("\t\treturn null;");
+		writer.println("\t}");
+		writer.println("}");
+	}
+}
@@ -0,0 +1,215 @@
+package com.google.code.twig.processor;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.code.twig.util.FieldAccessor;
+import com.google.code.twig.util.FieldAccessorFactory;
+
+/**
+ * Compiles a model class with the processor and uses the generated accessors
+ */
+public class FieldAccessProcessorTest
+{
+	private static final String SOURCE =
+		"package sample;\n" +
+		"\n" +
+		"@com.google.code.twig.annotation.Entity\n" +
+		"public class Sample\n" +
+		"{\n" +
+		"	int count;\n" +
+		"	long total;\n" +
+		"	boolean flag;\n" +
+		"	String name;\n" +
+		"	java.util.List<String> tags;\n" +
+		"	private int hidden;\n" +
+		"	final int fixed = 1;\n" +
+		"}\n";
+
+	// field types that the generated top level class cannot see
+	private static final String OUTER =
+		"package sample;\n" +
+		"\n" +
+		"public class Outer\n" +
+		"{\n" +
+		"	private static class Hidden {}\n" +
+		"\n" +
+		"	@com.google.code.twig.annotation.Entity\n" +
+		"	static class Inner\n" +
+		"	{\n" +
+		"		Hidden hidden;\n" +
+		"		Hidden[] hiddens;\n" +
+		"		int count;\n" +
+		"	}\n" +
+		"}\n";
+
+	private static final String BASE =
+		"package base;\n" +
+		"\n" +
+		"public class Base\n" +
+		"{\n" +
+		"	protected static class Shielded {}\n" +
+		"}\n";
+
+	private static final String DERIVED =
+		"package sample;\n" +
+		"\n" +
+		"@com.google.code.twig.annotation.Entity\n" +
+		"public class Derived extends base.Base\n" +
+		"{\n" +
+		"	Shielded shielded;\n" +
+		"	java.util.List<Shielded> shieldeds;\n" +
+		"	String name;\n" +
+		"}\n";
+
+	private ClassLoader loader;
+	private Class<?> sample;
+	private FieldAccessorFactory factory;
+
+	@Before
+	public void compile() throws Exception
+	{
+		File directory = File.createTempFile("processor", "");
+		directory.delete();
+		File[] sources = {
+				write(directory, "sample/Sample.java", SOURCE),
+				write(directory, "sample/Outer.java", OUTER),
+				write(directory, "base/Base.java", BASE),
+				write(directory, "sample/Derived.java", DERIVED)
+		};
+
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		StandardJavaFileManager files = compiler.getStandardFileManager(null, null, null);
+		Iterable<? extends JavaFileObject> units = files.getJavaFileObjects(sources);
+		boolean compiled = compiler.getTask(null, files, null, Arrays.asList(
+				"-d", directory.getPath(),
+				"-classpath", System.getProperty("java.class.path"),
+				"-processor", FieldAccessProcessor.class.getName()), null, units).call();
+		files.close();
+		Assert.assertTrue(compiled);
+
+		loader = new URLClassLoader(new URL[] { directory.toURI().toURL() }, getClass().getClassLoader());
+		sample = loader.loadClass("sample.Sample");
+		factory = factory("sample.Sample");
+	}
+
+	private static File write(File directory, String path, String source) throws IOException
+	{
+		File file = new File(directory, path);
+		file.getParentFile().mkdirs();
+		Writer writer = new FileWriter(file);
+		try
+		{
+			writer.write(source);
+		}
+		finally
+		{
+			writer.close();
+		}
+		return file;
+	}
+
+	private FieldAccessorFactory factory(String type) throws Exception
+	{
+		return (FieldAccessorFactory) loader.loadClass(type + FieldAccessProcessor.SUFFIX).newInstance();
+	}
+
+	private FieldAccessor accessor(String name) throws NoSuchFieldException
+	{
+		return factory.accessor(sample.getDeclaredField(name));
+	}
+
+	@Test
+	public void generatedAccessorsReadAndWriteFields() throws Exception
+	{
+		Object instance = sample.newInstance();
+
+		accessor("count").set(instance, 3);
+		Assert.assertEquals(3, accessor("count").get(instance));
+
+		accessor("flag").set(instance, true);
+		Assert.assertEquals(true, accessor("flag").get(instance));
+
+		accessor("name").set(instance, "twig");
+		Assert.assertEquals("twig", accessor("name").get(instance));
+
+		accessor("tags").set(instance, Arrays.asList("a", "b"));
+		Assert.assertEquals(Arrays.asList("a", "b"), accessor("tags").get(instance));
+	}
+
+	@Test
+	public void privateAndFinalFieldsAreNotGenerated() throws Exception
+	{
+		Assert.assertNull(accessor("hidden"));
+		Assert.assertNull(accessor("fixed"));
+	}
+
+	@Test
+	public void fieldsWithTypesTheGeneratedClassCannotSeeAreNotGenerated() throws Exception
+	{
+		Class<?> inner = loader.loadClass("sample.Outer$Inner");
+		FieldAccessorFactory accessors = factory("sample.Outer$Inner");
+		Assert.assertNull(accessors.accessor(inner.getDeclaredField("hidden")));
+		Assert.assertNull(accessors.accessor(inner.getDeclaredField("hiddens")));
+		Assert.assertNotNull(accessors.accessor(inner.getDeclaredField("count")));
+
+		Class<?> derived = loader.loadClass("sample.Derived");
+		accessors = factory("sample.Derived");
+		Assert.assertNull(accessors.accessor(derived.getDeclaredField("shielded")));
+		Assert.assertNotNull(accessors.accessor(derived.getDeclaredField("shieldeds")));
+		Assert.assertNotNull(accessors.accessor(derived.getDeclaredField("name")));
+	}
+
+	@Test
+	public void smallerNumbersAreWidened() throws Exception
+	{
+		Object instance = sample.newInstance();
+
+		accessor("count").set(instance, (short) 4);
+		Assert.assertEquals(4, accessor("count").get(instance));
+
+		accessor("total").set(instance, 7);
+		Assert.assertEquals(7L, accessor("total").get(instance));
+	}
+
+	@Test
+	public void largerNumbersAreNotNarrowed() throws Exception
+	{
+		Object instance = sample.newInstance();
+		accessor("count").set(instance, 3);
+
+		assertRejected(instance, "count", Long.valueOf(Integer.MAX_VALUE + 1L));
+		assertRejected(instance, "count", 2.5d);
+		assertRejected(instance, "count", null);
+
+		Assert.assertEquals(3, accessor("count").get(instance));
+	}
+
+	private void assertRejected(Object instance, String name, Object value) throws NoSuchFieldException
+	{
+		try
+		{
+			accessor(name).set(instance, value);
+			Assert.fail("Set " + value);
+		}
+		catch (RuntimeException e)
+		{
+			// the same failure as Field.set
+			Assert.assertTrue(e.getCause() instanceof IllegalArgumentException);
+		}
+	}
+}
@@ -0,0 +1,25 @@
+package com.google.code.twig;
+
+import java.util.Set;
+
+/**
+ * Receives the properties of an encoded instance so they can be written
+ * straight to an entity instead of first being merged into sets.
+ *
+ * @see com.google.code.twig.translator.FieldTranslator#encode(Object, Path, boolean, EncodeSink)
+ */
+public interface EncodeSink
+{
+	/**
+	 * @param name The full property name
+	 * @param value A native value or list of values which may be or contain
+	 * {@link com.google.code.twig.util.reference.ObjectReference}s to keys
+	 * that are only resolved when the entity is written
+	 */
+	void property(String name, Object value, boolean indexed);
+
+	/**
+	 * Add properties returned by a translator
+	 */
+	void properties(Set<Property> properties);
+}
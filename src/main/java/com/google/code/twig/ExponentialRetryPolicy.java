@@ -0,0 +1,135 @@
+package com.google.code.twig;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import com.google.appengine.api.datastore.DatastoreFailureException;
+import com.google.appengine.api.datastore.DatastoreTimeoutException;
+
+/**
+ * Retries timeouts, contention and transient failures with a delay that
+ * doubles after each attempt. A random part of each delay is removed so
+ * that clients which failed together do not all retry at the same time.
+ */
+public final class ExponentialRetryPolicy implements RetryPolicy
+{
+	private static final Random random = new Random();
+
+	private int attempts = 3;
+	private long initialDelay = 100;
+	private long maximumDelay = 5000;
+	private double multiplier = 2;
+	private double jitter = 0.5;
+	private Long attemptDeadline;
+	private List<Class<? extends RuntimeException>> retryable = new ArrayList<Class<? extends RuntimeException>>(Arrays.asList(
+			DatastoreTimeoutException.class,
+			DatastoreFailureException.class,
+			ConcurrentModificationException.class));
+
+	public static class Builder
+	{
+		private final ExponentialRetryPolicy policy = new ExponentialRetryPolicy();
+
+		public Builder attempts(int attempts)
+		{
+			policy.attempts = attempts;
+			return this;
+		}
+
+		public Builder initialDelay(long value, TimeUnit unit)
+		{
+			policy.initialDelay = unit.toMillis(value);
+			return this;
+		}
+
+		public Builder maximumDelay(long value, TimeUnit unit)
+		{
+			policy.maximumDelay = unit.toMillis(value);
+			return this;
+		}
+
+		public Builder multiplier(double multiplier)
+		{
+			policy.multiplier = multiplier;
+			return this;
+		}
+
+		/**
+		 * @param jitter The fraction of each delay that is random from 0 to 1
+		 */
+		public Builder jitter(double jitter)
+		{
+			policy.jitter = jitter;
+			return this;
+		}
+
+		/**
+		 * Give up on each attempt after this time so there is time left to retry
+		 */
+		public Builder attemptDeadline(long value, TimeUnit unit)
+		{
+			policy.attemptDeadline = unit.toMillis(value);
+			return this;
+		}
+
+		/**
+		 * Also retry calls that fail with this exception or a sub-class
+		 */
+		public Builder retryOn(Class<? extends RuntimeException> type)
+		{
+			policy.retryable.add(type);
+			return this;
+		}
+
+		public ExponentialRetryPolicy build()
+		{
+			return policy;
+		}
+	}
+
+	public static Builder builder()
+	{
+		return new Builder();
+	}
+
+	public static ExponentialRetryPolicy defaults()
+	{
+		return new ExponentialRetryPolicy();
+	}
+
+	private ExponentialRetryPolicy()
+	{
+	}
+
+	public int getAttempts()
+	{
+		return attempts;
+	}
+
+	public boolean isRetryable(RuntimeException e)
+	{
+		for (Class<? extends RuntimeException> type : retryable)
+		{
+			if (type.isInstance(e))
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public long getDelay(int retry)
+	{
+		double delay = Math.min(maximumDelay, initialDelay * Math.pow(multiplier, retry - 1));
+		return (long) (delay - delay * jitter * random.nextDouble());
+	}
+
+	public Long getDeadline(int attempt)
+	{
+		return attemptDeadline;
+	}
+}
@@ -99,6 +99,12 @@ public interface FindCommand
 		
 		RootFindCommand<T> fetchNextBy(int size);
 		RootFindCommand<T> fetchFirst(int size);
+		
+		/**
+		 * Fetch results in chunks of the fetchNextBy size while the current
+		 * chunk is used with at most this many chunks started ahead
+		 */
+		RootFindCommand<T> pipeline(int chunks);
 
 		RootFindCommand<T> remember();
 		
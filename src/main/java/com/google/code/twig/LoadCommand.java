@@ -33,6 +33,12 @@ public interface LoadCommand
 		C consistency(Consistency consistency);
 		C deadline(long value, TimeUnit unit);
 		C cache(CacheMode mode);
+		
+		/**
+		 * Read this many result entities ahead and get all the instances they
+		 * reference in one bulk get per activation level before decoding them
+		 */
+		C prefetchRelations(int chunk);
 	}
 	
 	interface CommonLoadCommand<C extends CommonLoadCommand<C>> extends CommonDecodeCommand<C>
@@ -52,6 +58,12 @@ public interface LoadCommand
 	interface MultipleUntypedLoadCommand extends CommonDecodeCommand<MultipleUntypedLoadCommand>
 	{
 		<T> Map<Key, T> now();
+		
+		/**
+		 * Starts getting the entities without blocking and decodes them when the
+		 * future is resolved
+		 */
+		<T> Future<Map<Key, T>> later();
 	}
 	
 	interface MultipleTypedLoadCommand<T> extends CommonLoadCommand<MultipleTypedLoadCommand<T>>, CommandTerminator<Map<Object, T>>
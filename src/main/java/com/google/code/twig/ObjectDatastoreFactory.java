@@ -9,6 +9,9 @@ import com.google.code.twig.standard.StandardObjectDatastore;
 public class ObjectDatastoreFactory
 {
 	private static ObjectDatastoreFactory instance = new ObjectDatastoreFactory();
+
+	// shared so that datastores created by the factory also share their models
+	private static final Configuration configuration = new AnnotationConfiguration();
 	
 	public static ObjectDatastore createObjectDatastore()
 	{
@@ -27,7 +30,7 @@ public class ObjectDatastoreFactory
 
 	protected static Configuration getConfiguration()
 	{
-		return new AnnotationConfiguration();
+		return configuration;
 	}
 
 	public static void register(Class<?> model)
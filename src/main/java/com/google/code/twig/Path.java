@@ -2,10 +2,12 @@ package com.google.code.twig;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ConcurrentMap;
 
 import com.google.code.twig.util.Strings;
 import com.google.common.base.Function;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 
 /**
  * @author John Patterson (jdpatterson@gmail.com)
@@ -28,12 +30,15 @@ public class Path implements Comparable<Path>
 			return new Part(input);
 		}
 	};
+
+	// field names come from the model classes so there are not many of them
+	private static final ConcurrentMap<String, Part> fieldParts = Maps.newConcurrentMap();
 	
 	private List<Part> parts;
 
 	public static class Builder
 	{
-		private final StringBuilder builder = new StringBuilder();
+		private Path path = EMPTY_PATH;
 
 		private Builder()
 		{
@@ -42,82 +47,94 @@ public class Path implements Comparable<Path>
 		// TODO make these private with static methods to create
 		public Builder(String property)
 		{
-			builder.append(property);
+			path = new Path(property);
 		}
 
 		public Builder(Path base)
 		{
-			builder.append(base.toString());
+			path = base;
 		}
 
 		public Path build()
 		{
-			return new Path(builder.toString());
+			return path;
 		}
 
 		public Builder field(String name)
 		{
-			ensureValidPart(name);
-			if (builder.length() > 0)
-			{
-				builder.append(FIELD);
-			}
-			builder.append(name);
+			path = path.child(fieldPart(name));
 			return this;
 		}
 
-
 		public Builder meta(String name)
 		{
-			builder.append(META);
-			builder.append(name);
+			path = path.child(new Part(META + name));
 			return this;
 		}
 
 		public Builder key(String name)
 		{
-			builder.append(KEY);
-			builder.append(name);
+			path = path.child(new Part(KEY + name));
 			return this;
 		}
-		
-		private void ensureValidPart(String name)
-		{
-			if (Strings.firstIndexOf(name, SEPERATORS) >= 0)
-			{
-				throw new IllegalArgumentException("Path parts cannot contain " + Arrays.toString(SEPERATORS));
-			}
-		}
 
 		public Builder append(Path tail)
 		{
 			assert tail.isAbsolute() == false;
-			builder.append(tail.value);
+			for (Part part : tail.getParts())
+			{
+				path = path.child(part);
+			}
 			return this;
 		}
 		
 		public Builder append(Part part)
 		{
-			assert builder.length() == 0 || !part.isRoot();
-			builder.append(part.text);
+			assert path.isEmpty() || !part.isRoot();
+			path = path.child(part);
 			return this;
 		}
 	}
+
+	private static void ensureValidPart(String name)
+	{
+		if (Strings.firstIndexOf(name, SEPERATORS) >= 0)
+		{
+			throw new IllegalArgumentException("Path parts cannot contain " + Arrays.toString(SEPERATORS));
+		}
+	}
 	
 	public static Builder builder()
 	{
 		return new Builder();
 	}
 
+	/**
+	 * @param name A valid field name
+	 * @return The shared part that separates this field from its parent path
+	 */
+	public static Part fieldPart(String name)
+	{
+		Part part = fieldParts.get(name);
+		if (part == null)
+		{
+			ensureValidPart(name);
+			part = new Part(FIELD + name, new Part(name));
+			Part existing = fieldParts.putIfAbsent(name, part);
+			if (existing != null)
+			{
+				part = existing;
+			}
+		}
+		return part;
+	}
+
 	public static class Part
 	{
 		@Override
 		public int hashCode()
 		{
-			final int prime = 31;
-			int result = 1;
-			result = prime * result + ((text == null) ? 0 : text.hashCode());
-			return result;
+			return hash;
 		}
 
 		@Override
@@ -130,21 +147,34 @@ public class Path implements Comparable<Path>
 			if (getClass() != obj.getClass())
 				return false;
 			Part other = (Part) obj;
-			if (text == null)
-			{
-				if (other.text != null)
-					return false;
-			}
-			else if (!text.equals(other.text))
-				return false;
-			return true;
+			return hash == other.hash && text.equals(other.text);
 		}
 
 		private final String text;
+		private final int hash;
+
+		// 31 to the power of the text length used to extend a path hash code
+		private final int multiplier;
+
+		// used instead of a field part at the start of a path
+		private final Part root;
 
 		private Part(String text)
+		{
+			this(text, null);
+		}
+
+		private Part(String text, Part root)
 		{
 			this.text = text;
+			this.hash = text.hashCode();
+			int multiplier = 1;
+			for (int i = 0; i < text.length(); i++)
+			{
+				multiplier *= 31;
+			}
+			this.multiplier = multiplier;
+			this.root = root;
 		}
 
 		public boolean isField()
@@ -188,11 +218,57 @@ public class Path implements Comparable<Path>
 		}
 	}
 
-	private final String value;
+	// paths built from parts keep a reference to their parent instead of the full text
+	private final Path parent;
+	private final Part part;
+	private String value;
+	private final int length;
+	private final int hash;
+	private int depth = -1;
 
 	public Path(String value)
 	{
 		this.value = value;
+		this.parent = null;
+		this.part = null;
+		this.length = value.length();
+		this.hash = value.hashCode();
+	}
+
+	private Path(Path parent, Part part)
+	{
+		this.part = part;
+		if (parent.isEmpty())
+		{
+			this.parent = null;
+			this.length = part.text.length();
+			this.hash = part.hash;
+			this.depth = 1;
+		}
+		else
+		{
+			this.parent = parent;
+			this.length = parent.length + part.text.length();
+
+			// the same value as the hash code of the full text
+			this.hash = parent.hash * part.multiplier + part.hash;
+			if (parent.depth >= 0)
+			{
+				this.depth = parent.depth + 1;
+			}
+		}
+	}
+
+	/**
+	 * @return A path with the part added to the end of this path
+	 */
+	public Path child(Part part)
+	{
+		if (isEmpty() && part.root != null)
+		{
+			part = part.root;
+		}
+		return new Path(this, part);
 	}
 	
 	/**
@@ -210,14 +286,58 @@ public class Path implements Comparable<Path>
 	{
 		if (parts == null)
 		{
-			String[] split = Strings.split(value, true, SEPERATORS);
-			parts =	Lists.transform(Arrays.asList(split), stringToPart);
+			if (part == null)
+			{
+				String[] split = Strings.split(value, true, SEPERATORS);
+				parts =	Lists.transform(Arrays.asList(split), stringToPart);
+			}
+			else
+			{
+				Part[] array = new Part[getDepth()];
+				Path current = this;
+				for (int i = array.length - 1; i >= 0; i--)
+				{
+					if (current.part == null)
+					{
+						// a path created from text is at the start
+						List<Part> head = current.getParts();
+						for (int j = head.size() - 1; j >= 0; j--)
+						{
+							array[i--] = head.get(j);
+						}
+						break;
+					}
+					array[i] = current.part;
+					current = current.parent;
+				}
+				parts = Arrays.asList(array);
+			}
 		}
 		return parts;
 	}
+
+	/**
+	 * @return The number of parts in this path
+	 */
+	public int getDepth()
+	{
+		if (depth < 0)
+		{
+			if (part == null)
+			{
+				depth = getParts().size();
+			}
+			else
+			{
+				depth = parent.getDepth() + 1;
+			}
+		}
+		return depth;
+	}
 	
 	public Path tail(int start)
 	{
+		String value = toString();
 		int index = Strings.nthIndexOf(value, start, SEPERATORS);
 		if (index < 0) return EMPTY_PATH;
 		return new Path(value.substring(index));
@@ -225,18 +345,25 @@ public class Path implements Comparable<Path>
 	
 	public Path head()
 	{
+		if (parent != null)
+		{
+			return parent;
+		}
+		String value = toString();
 		int index = Strings.lastIndexOf(value, SEPERATORS);
 		return new Path(value.substring(0, index));
 	}
 	
 	public Path head(int end)
 	{
+		String value = toString();
 		int index = Strings.nthIndexOf(value, end, SEPERATORS);
 		return new Path(value.substring(0, index));
 	}
 
 	public Part firstPart()
 	{
+		String value = toString();
 		int index = Strings.firstIndexOf(value, SEPERATORS);
 		if (index > 0)
 		{
@@ -250,12 +377,12 @@ public class Path implements Comparable<Path>
 
 	public boolean isEmpty()
 	{
-		return value.length() == 0;
+		return length == 0;
 	}
 	
 	public boolean isAbsolute()
 	{
-		char c = value.charAt(0);
+		char c = toString().charAt(0);
 		for (char seperator : SEPERATORS)
 		{
 			if (c == seperator)
@@ -266,18 +393,52 @@ public class Path implements Comparable<Path>
 		return true;
 	}
 
+	/**
+	 * The text of paths built from parts is only created when first needed
+	 * which is usually when the property is set on the entity.
+	 */
 	@Override
 	public String toString()
 	{
+		if (value == null)
+		{
+			char[] chars = new char[length];
+			for (Path current = this; current != null; current = current.parent)
+			{
+				if (current.part == null)
+				{
+					current.value.getChars(0, current.length, chars, 0);
+					break;
+				}
+				String text = current.part.text;
+				text.getChars(0, text.length(), chars, current.length - text.length());
+			}
+			value = new String(chars);
+		}
 		return value;
 	}
 
 	public boolean hasPrefix(Path path)
 	{
-		return path.isEmpty() ||
-			(value.startsWith(path.value)
-			&& (value.length() == path.value.length() ||
-			isSeperator(value.charAt(path.value.length()))));
+		if (path.isEmpty())
+		{
+			return true;
+		}
+
+		// paths built from the same prefix can be checked without the text
+		for (Path current = this; current != null && current.length >= path.length; current = current.parent)
+		{
+			if (current == path)
+			{
+				return true;
+			}
+		}
+
+		String value = toString();
+		String prefix = path.toString();
+		return value.startsWith(prefix)
+			&& (value.length() == prefix.length() ||
+			isSeperator(value.charAt(prefix.length())));
 	}
 
 	private boolean isSeperator(char c)
@@ -295,16 +456,27 @@ public class Path implements Comparable<Path>
 	public Part firstPartAfterPrefix(Path prefix)
 	{
 		assert hasPrefix(prefix);
-		return getParts().get(prefix.getParts().size());
+
+		// find the part directly under the same prefix instance
+		for (Path current = this; current != null && current.part != null; current = current.parent)
+		{
+			if (current.parent == prefix || (current.parent == null && prefix.isEmpty()))
+			{
+				return current.part;
+			}
+		}
+
+		// only create the single part that is needed
+		String value = toString();
+		int start = prefix.length;
+		int end = Strings.firstIndexOf(value, start + 1, SEPERATORS);
+		return new Part(end < 0 ? value.substring(start) : value.substring(start, end));
 	}
 
 	@Override
 	public int hashCode()
 	{
-		final int prime = 31;
-		int result = 1;
-		result = prime * result + ((value == null) ? 0 : value.hashCode());
-		return result;
+		return hash;
 	}
 
 	@Override
@@ -323,16 +495,25 @@ public class Path implements Comparable<Path>
 			return false;
 		}
 		Path other = (Path) obj;
-		if (!value.equals(other.value))
+		if (hash != other.hash || length != other.length)
 		{
 			return false;
 		}
-		return true;
+		if (part != null && other.part != null && parent == other.parent)
+		{
+			return part.equals(other.part);
+		}
+		return toString().equals(other.toString());
 	}
 
 	public int compareTo(Path o)
 	{
-		return value.compareTo(o.value);
+		if (part != null && o.part != null && parent == o.parent)
+		{
+			// the same prefix so only the last parts need comparing
+			return part.text.compareTo(o.part.text);
+		}
+		return toString().compareTo(o.toString());
 	}
 
 	public static Builder builder(Path path)
@@ -342,6 +523,10 @@ public class Path implements Comparable<Path>
 
 	public Part getLastPart()
 	{
+		if (part != null)
+		{
+			return part;
+		}
 		return new Part(value.substring(Strings.lastIndexOf(value, SEPERATORS)));
 	}
 
@@ -50,6 +50,7 @@ public class Registry
 		}
 		Registration registration = new Registration(annotation.kind(), model);
 		classToRegistration.put(model, registration);
+		nameToRegistration.put(registration.getName(), registration);
 	}
 
 	public Registration registration(Class<?> model)
@@ -0,0 +1,32 @@
+package com.google.code.twig;
+
+/**
+ * Decides which failed datastore calls are tried again and how long to wait
+ * between attempts. Calls made inside a transaction are never retried.
+ *
+ * @see ExponentialRetryPolicy
+ */
+public interface RetryPolicy
+{
+	/**
+	 * @return The maximum number of attempts including the first
+	 */
+	int getAttempts();
+
+	/**
+	 * @return True if a call that failed with this exception may succeed when tried again
+	 */
+	boolean isRetryable(RuntimeException e);
+
+	/**
+	 * @param retry The retry number starting from 1 for the second attempt
+	 * @return The milliseconds to wait before the retry
+	 */
+	long getDelay(int retry);
+
+	/**
+	 * @param attempt The attempt number starting from 0
+	 * @return The deadline in milliseconds of the attempt or null to use the settings deadline
+	 */
+	Long getDeadline(int attempt);
+}
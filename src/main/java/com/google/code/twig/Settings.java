@@ -12,6 +12,10 @@ public final class Settings implements Cloneable
 	private boolean crossGroupTransactions = true;
 	private CacheMode cacheMode = CacheMode.AUTO;
 	private int retries = 3;
+	private RetryPolicy retryPolicy = ExponentialRetryPolicy.builder().attempts(retries).build();
+	private int batchSize = 500;
+	private int batchBytes = 4 * 1024 * 1024;
+	private int concurrentBatches = 4;
 	
 	public static class Builder
 	{
@@ -52,9 +56,47 @@ public final class Settings implements Cloneable
 			return this;
 		}
 
+		/**
+		 * Use the default retry policy with this many attempts
+		 */
 		public Builder retries(int retries)
 		{
 			settings.retries = retries;
+			settings.retryPolicy = ExponentialRetryPolicy.builder().attempts(retries).build();
+			return this;
+		}
+		
+		public Builder retryPolicy(RetryPolicy retryPolicy)
+		{
+			settings.retryPolicy = retryPolicy;
+			settings.retries = retryPolicy.getAttempts();
+			return this;
+		}
+
+		/**
+		 * The maximum number of entities or keys sent in one bulk put or delete
+		 */
+		public Builder batchSize(int batchSize)
+		{
+			settings.batchSize = batchSize;
+			return this;
+		}
+		
+		/**
+		 * The maximum estimated size of the entities sent in one bulk put
+		 */
+		public Builder batchBytes(int batchBytes)
+		{
+			settings.batchBytes = batchBytes;
+			return this;
+		}
+		
+		/**
+		 * The number of batches of a large put or delete sent at the same time
+		 */
+		public Builder concurrentBatches(int concurrentBatches)
+		{
+			settings.concurrentBatches = concurrentBatches;
 			return this;
 		}
 
@@ -104,6 +146,29 @@ public final class Settings implements Cloneable
 		return retries;
 	}
 	
+	public int getBatchSize()
+	{
+		return batchSize;
+	}
+	
+	public int getBatchBytes()
+	{
+		return batchBytes;
+	}
+	
+	public int getConcurrentBatches()
+	{
+		return concurrentBatches;
+	}
+	
+	/**
+	 * @return The policy given or an {@link ExponentialRetryPolicy} with {@link #getRetries()} attempts
+	 */
+	public RetryPolicy getRetryPolicy()
+	{
+		return retryPolicy;
+	}
+	
 	public CacheMode getCacheMode()
 	{
 		return cacheMode;
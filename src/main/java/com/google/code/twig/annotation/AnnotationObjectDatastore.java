@@ -5,6 +5,9 @@ import com.google.code.twig.standard.StandardObjectDatastore;
 
 public class AnnotationObjectDatastore extends StandardObjectDatastore
 {
+	// the configuration has no state so one instance shares its models between datastores
+	private static final AnnotationConfiguration configuration = new AnnotationConfiguration();
+
 	public AnnotationObjectDatastore()
 	{
 		this(true);
@@ -27,6 +30,6 @@ public class AnnotationObjectDatastore extends StandardObjectDatastore
 	
 	public AnnotationObjectDatastore(Settings settings, int activation, boolean indexed)
 	{
-		super(settings, new AnnotationConfiguration(), activation, indexed);
+		super(settings, configuration, activation, indexed);
 	}
 }
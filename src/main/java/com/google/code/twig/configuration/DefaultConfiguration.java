@@ -4,55 +4,113 @@ import java.lang.reflect.Field;
 import java.lang.reflect.Type;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
 
 /**
  * @author John Patterson <jdpatterson@gmail.com>
  */
 public abstract class DefaultConfiguration implements Configuration
 {
-	private static Map<String, Class<?>> nameToType;
-	private static Map<Class<?>,String> typeToName;
+	// replaced rather than changed so they can be read by any thread without locking
+	private static volatile Map<String, Class<?>> nameToType = ImmutableMap.of();
+	private static volatile Map<Class<?>,String> typeToName = ImmutableMap.of();
+
+	// kind names are calculated once per configuration instance and kind or type
+	private static final class KindCache
+	{
+		// the registered names the kinds were calculated with
+		private final Map<String, Class<?>> names;
+		private final ConcurrentMap<String, Class<?>> kindToType = Maps.newConcurrentMap();
+		private final ConcurrentMap<Class<?>, String> typeToKind = Maps.newConcurrentMap();
+
+		KindCache(Map<String, Class<?>> names)
+		{
+			this.names = names;
+		}
+	}
+
+	private volatile KindCache kindCache = new KindCache(nameToType);
+
+	// registered names change the kinds so start again when they are replaced
+	private KindCache kindCache()
+	{
+		Map<String, Class<?>> names = nameToType;
+		KindCache cache = kindCache;
+		if (cache.names != names)
+		{
+			cache = new KindCache(names);
+			kindCache = cache;
+		}
+		return cache;
+	}
 	
 	// cache field types on the fly as the may involve calculation / replacement
 //	private static Map<Type, Type> typeToReplacement = Maps.newConcurrentMap();
 	
 	// TODO remove this
-	public static void secretMethodForSneakilyChangingTypeName(Class<?> type, String name)
+	public static synchronized void secretMethodForSneakilyChangingTypeName(Class<?> type, String name)
 	{
-		nameToType.put(name, type);
-		typeToName.put(type, name);
+		Map<String, Class<?>> names = new HashMap<String, Class<?>>(nameToType);
+		Map<Class<?>, String> types = new HashMap<Class<?>, String>(typeToName);
+		names.put(name, type);
+		types.put(type, name);
+		publish(names, types);
 	}
 
-	public static void registerTypeName(Class<?> type, String name)
+	public static synchronized void registerTypeName(Class<?> type, String name)
 	{
-		if (nameToType == null)
-		{
-			// should be configured at start-up so no need for concurrency
-			nameToType = new HashMap<String, Class<?>>();
-			typeToName = new HashMap<Class<?>, String>();
-		}
-		
 		// put the values and check that there was no existing mappings
 		Type existingType = nameToType.get(name);
-		if (existingType == null)
-		{
-			nameToType.put(name, type);
-		}
-		else
+		if (existingType != null)
 		{
 			throw new IllegalArgumentException("Kind name " + name + " was already mapped to " + existingType);
 		}
 		
 		String existingName = typeToName.get(type);
-		if (existingName == null)
+		if (existingName != null)
 		{
-			typeToName.put(type, name);
+			throw new IllegalArgumentException("Type " + type + " was already mapped to kind name " + existingName);
 		}
-		else
+		
+		Map<String, Class<?>> names = new HashMap<String, Class<?>>(nameToType);
+		Map<Class<?>, String> types = new HashMap<Class<?>, String>(typeToName);
+		names.put(name, type);
+		types.put(type, name);
+		publish(names, types);
+	}
+
+	/**
+	 * Remove the name registered for the type so it is encoded by its class name again
+	 */
+	public static synchronized void unregisterTypeName(Class<?> type)
+	{
+		String name = typeToName.get(type);
+		if (name != null)
 		{
-			throw new IllegalArgumentException("Type " + type + " was already mapped to kind name " + existingName);
+			Map<String, Class<?>> names = new HashMap<String, Class<?>>(nameToType);
+			Map<Class<?>, String> types = new HashMap<Class<?>, String>(typeToName);
+			names.remove(name);
+			types.remove(type);
+			publish(names, types);
 		}
 	}
+
+	/**
+	 * @return The name registered for the type or null
+	 */
+	public static String registeredTypeName(Class<?> type)
+	{
+		return typeToName.get(type);
+	}
+
+	private static void publish(Map<String, Class<?>> names, Map<Class<?>, String> types)
+	{
+		nameToType = ImmutableMap.copyOf(names);
+		typeToName = ImmutableMap.copyOf(types);
+	}
 	
 	@Override
 	public int retryNonTransactionPut()
@@ -69,13 +127,10 @@ public abstract class DefaultConfiguration implements Configuration
 	{
 		try
 		{	
-			if (nameToType != null)
+			Class<?> type = nameToType.get(name);
+			if (type != null)
 			{
-				Class<?> type = nameToType.get(name);
-				if (type != null)
-				{
-					return type;
-				}
+				return type;
 			}
 			return Class.forName(name);
 		}
@@ -85,7 +140,19 @@ public abstract class DefaultConfiguration implements Configuration
 		}
 	}
 
-	public final Class<?> kindToType(String name)
+	public final Class<?> kindToType(String kind)
+	{
+		KindCache cache = kindCache();
+		Class<?> type = cache.kindToType.get(kind);
+		if (type == null)
+		{
+			type = decodeKind(kind);
+			cache.kindToType.put(kind, type);
+		}
+		return type;
+	}
+
+	private Class<?> decodeKind(String name)
 	{
 		int versionIndex = name.indexOf(':');
 		
@@ -95,9 +162,9 @@ public abstract class DefaultConfiguration implements Configuration
 		}
 		
 		//use space as a place holder as it cannot exist in property names
-		name = name.replaceAll("__", " ");
-		name = name.replaceAll("_", ".");
-		name = name.replaceAll(" ", "_");
+		name = name.replace("__", " ");
+		name = name.replace('_', '.');
+		name = name.replace(' ', '_');
 		
 		return nameToType(name);
 	}
@@ -117,6 +184,18 @@ public abstract class DefaultConfiguration implements Configuration
 	}
 
 	public final String typeToKind(Class<?> type)
+	{
+		KindCache cache = kindCache();
+		String kind = cache.typeToKind.get(type);
+		if (kind == null)
+		{
+			kind = encodeKind(type);
+			cache.typeToKind.put(type, kind);
+		}
+		return kind;
+	}
+
+	private String encodeKind(Class<?> type)
 	{
 		String kind = typeToName(type);
 		
@@ -140,13 +219,10 @@ public abstract class DefaultConfiguration implements Configuration
 	 */
 	protected String typeToName(Class<?> type)
 	{
-		if (typeToName != null)
+		String name = typeToName.get(type);
+		if (name != null)
 		{
-			String name = typeToName.get(type);
-			if (name != null)
-			{
-				return name;
-			}
+			return name;
 		}
 		return type.getName();
 	}
@@ -0,0 +1,125 @@
+package com.google.code.twig.standard;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
+
+import com.google.appengine.api.NamespaceManager;
+import com.google.appengine.api.datastore.AsyncDatastoreService;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyRange;
+import com.google.code.twig.util.FutureResults;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Hands out ids that were allocated in blocks for a namespace, kind and
+ * parent. A pool is shared by all datastores in the process and starts
+ * allocating the next block asynchronously when half of the current block
+ * has been used so that encoding an instance rarely has to wait for the
+ * datastore.
+ */
+final class AllocatedIdPool
+{
+	// pools for child kinds are created for each parent so only keep the recent ones
+	private static final ConcurrentMap<List<?>, AllocatedIdPool> pools = createPools();
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static ConcurrentMap<List<?>, AllocatedIdPool> createPools()
+	{
+		CacheBuilder cacheBuilder = CacheBuilder.newBuilder();
+		cacheBuilder.maximumSize(1000);
+		return cacheBuilder.build().asMap();
+	}
+
+	private final Key parent;
+	private final String kind;
+	private final long block;
+
+	// the next id to use and the last id of the current block
+	private long next = 1;
+	private long end;
+
+	private Future<KeyRange> refill;
+
+	/**
+	 * Forget all pools so tests start with new blocks
+	 */
+	static void reset()
+	{
+		pools.clear();
+	}
+
+	private AllocatedIdPool(Key parent, String kind, long block)
+	{
+		this.parent = parent;
+		this.kind = kind;
+		this.block = block;
+	}
+
+	/**
+	 * @param parent The parent key of the instance or null for a root kind
+	 * @param block The number of ids to allocate at a time
+	 */
+	static long nextId(AsyncDatastoreService service, Key parent, String kind, long block)
+	{
+		// root kinds in different namespaces have separate ids
+		List<?> key = Arrays.asList(NamespaceManager.get(), kind, parent);
+		AllocatedIdPool pool = pools.get(key);
+		if (pool == null)
+		{
+			pool = new AllocatedIdPool(parent, kind, block);
+			AllocatedIdPool existing = pools.putIfAbsent(key, pool);
+			if (existing != null)
+			{
+				pool = existing;
+			}
+		}
+		return pool.next(service);
+	}
+
+	private synchronized long next(AsyncDatastoreService service)
+	{
+		if (next > end)
+		{
+			// only blocks when ids are used faster than they are allocated
+			KeyRange range;
+			if (refill == null)
+			{
+				range = resolve(service.allocateIds(parent, kind, block));
+			}
+			else
+			{
+				Future<KeyRange> allocated = refill;
+				refill = null;
+				try
+				{
+					range = resolve(allocated);
+				}
+				catch (RuntimeException e)
+				{
+					// the early refill failed or was cancelled so allocate again
+					range = resolve(service.allocateIds(parent, kind, block));
+				}
+			}
+
+			next = range.getStart().getId();
+			end = range.getEnd().getId();
+		}
+
+		long id = next++;
+
+		// start the next block before this one runs out
+		if (refill == null && end - next < block / 2)
+		{
+			refill = service.allocateIds(parent, kind, block);
+		}
+
+		return id;
+	}
+
+	private static KeyRange resolve(Future<KeyRange> range)
+	{
+		return FutureResults.get(range);
+	}
+}
@@ -6,20 +6,30 @@ import com.google.appengine.api.memcache.Expiration;
 import com.google.appengine.api.memcache.MemcacheServiceFactory;
 import com.google.code.twig.LoadCommand.CacheMode;
 import com.google.code.twig.ObjectDatastore;
+import com.google.code.twig.RetryPolicy;
 import com.google.code.twig.Settings;
 import com.google.code.twig.Transactable;
+import com.google.code.twig.util.DeferredFuture;
+import com.google.code.twig.util.FutureResults;
+import com.google.code.twig.util.ImmediateFuture;
 import com.google.common.base.Predicates;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Collections2;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -82,8 +92,21 @@ public abstract class BaseObjectDatastore implements ObjectDatastore
 	}
 
 	// TODO move statics into registry
-	// concurrency not a problem if configured once in during startup
-	private static final Map<String, CacheDetails> kindToCache = Maps.newHashMap();
+	// replaced rather than changed so they can be read by any thread without locking
+	private static volatile Map<String, CacheDetails> kindToCache = ImmutableMap.of();
+
+	// configured services are stateless so they are shared by all instances
+	// deadlines can be set for each command and attempt so only keep the recently used services
+	private static final ConcurrentMap<List<?>, DatastoreService> services = createServices();
+	private static final ConcurrentMap<List<?>, AsyncDatastoreService> asyncServices = createServices();
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static <S> ConcurrentMap<List<?>, S> createServices()
+	{
+		CacheBuilder cacheBuilder = CacheBuilder.newBuilder();
+		cacheBuilder.maximumSize(100);
+		return cacheBuilder.build().asMap();
+	}
 
 	final Statistics statistics = new Statistics();
 	private Settings defaultSettings;
@@ -93,7 +116,7 @@ public abstract class BaseObjectDatastore implements ObjectDatastore
 		return this.statistics;
 	}
 
-	public static void registerCachedKind(String kind, int seconds, int maximum, boolean automatic, boolean global)
+	public static synchronized void registerCachedKind(String kind, int seconds, int maximum, boolean automatic, boolean global)
 	{
 		Map<Key, Entity> cache = null;
 		if (maximum >= 0)
@@ -114,7 +137,9 @@ public abstract class BaseObjectDatastore implements ObjectDatastore
       cache = cacheBuilder.build().asMap();
 		}
 
-		kindToCache.put(kind, new CacheDetails(cache, seconds, maximum, automatic, global));
+		Map<String, CacheDetails> kinds = Maps.newHashMap(kindToCache);
+		kinds.put(kind, new CacheDetails(cache, seconds, maximum, automatic, global));
+		kindToCache = ImmutableMap.copyOf(kinds);
 	}
 
 	public static boolean isKindCached(String kind)
@@ -180,10 +205,48 @@ public abstract class BaseObjectDatastore implements ObjectDatastore
 	public BaseObjectDatastore(Settings settings)
 	{
 		this.defaultSettings = settings;
-		this.defaultDatastoreService = newDatastoreService(settings);
+		this.defaultDatastoreService = configuredService(settings);
+	}
+
+	private static List<?> serviceKey(Settings settings)
+	{
+		// the read policy is made from the consistency so it is not part of the key
+		return Arrays.asList(settings.getDeadline(), settings.getConsistency());
+	}
+
+	private static DatastoreService configuredService(Settings settings)
+	{
+		List<?> key = serviceKey(settings);
+		DatastoreService service = services.get(key);
+		if (service == null)
+		{
+			service = DatastoreServiceFactory.getDatastoreService(newDatastoreServiceConfig(settings));
+			DatastoreService existing = services.putIfAbsent(key, service);
+			if (existing != null)
+			{
+				service = existing;
+			}
+		}
+		return service;
 	}
 
-	private DatastoreService newDatastoreService(Settings settings)
+	private static AsyncDatastoreService configuredAsyncService(Settings settings)
+	{
+		List<?> key = serviceKey(settings);
+		AsyncDatastoreService service = asyncServices.get(key);
+		if (service == null)
+		{
+			service = DatastoreServiceFactory.getAsyncDatastoreService(newDatastoreServiceConfig(settings));
+			AsyncDatastoreService existing = asyncServices.putIfAbsent(key, service);
+			if (existing != null)
+			{
+				service = existing;
+			}
+		}
+		return service;
+	}
+
+	private static DatastoreServiceConfig newDatastoreServiceConfig(Settings settings)
 	{
 		DatastoreServiceConfig config = DatastoreServiceConfig.Builder.withDefaults();
 		if (settings.getDeadline() != null)
@@ -194,8 +257,7 @@ public abstract class BaseObjectDatastore implements ObjectDatastore
 		{
 			config.readPolicy(new ReadPolicy(settings.getConsistency()));
 		}
-
-		return DatastoreServiceFactory.getDatastoreService(config);
+		return config;
 	}
 
 	public Settings getDefaultSettings()
@@ -320,7 +382,7 @@ public abstract class BaseObjectDatastore implements ObjectDatastore
 		DatastoreService service;
 		if (settings != null)
 		{
-			service = newDatastoreService(settings);
+			service = configuredService(settings);
 		}
 		else
 		{
@@ -329,30 +391,97 @@ public abstract class BaseObjectDatastore implements ObjectDatastore
 		return service;
 	}
 
+	final AsyncDatastoreService asyncService(Settings settings)
+	{
+		return configuredAsyncService(settings == null ? defaultSettings : settings);
+	}
+
 	private boolean isCacheEnabled(CacheDetails details, CacheMode mode)
 	{
 		return details != null && (mode == CacheMode.ON || mode == CacheMode.AUTO && details.automatic);
 	}
 
-	private Key putToDatastoreWithRetry(Entity entity, Settings settings)
+	private Key putToDatastoreWithRetry(final Entity entity, Settings settings)
 	{
 		// re-try puts which is useful when using remote-api over bad connection
-		RuntimeException last = null;
-		int retries = settings == null ? defaultSettings.getRetries() : settings.getRetries();
-		for (int tries = 0; tries < retries; tries++)
+		return retry(settings, new Attempt<Key>()
 		{
-			try
+			@Override
+			Key call(Settings settings)
 			{
 				return service(settings).put(entity);
 			}
+		});
+	}
+
+	/**
+	 * A datastore call that can be made again with the settings of each attempt
+	 */
+	static abstract class Attempt<T>
+	{
+		abstract T call(Settings settings);
+	}
+
+	/**
+	 * Makes the call and tries again after a delay while the settings retry
+	 * policy allows. Calls are not retried inside a transaction.
+	 */
+	final <T> T retry(Settings settings, Attempt<T> attempt)
+	{
+		return retry(settings, attempt, 0, null);
+	}
+
+	/**
+	 * @param tries The number of attempts that were already made
+	 * @param failure The problem with the last attempt or null
+	 */
+	final <T> T retry(Settings settings, Attempt<T> attempt, int tries, RuntimeException failure)
+	{
+		if (settings == null)
+		{
+			settings = defaultSettings;
+		}
+		RetryPolicy policy = settings.getRetryPolicy();
+		while (true)
+		{
+			if (failure != null)
+			{
+				if (transaction != null || tries >= policy.getAttempts() || !policy.isRetryable(failure))
+				{
+					throw failure;
+				}
+				
+				long delay = policy.getDelay(tries);
+				logger.log(Level.FINE, "Retry in " + delay + "ms after problem during try " + (tries - 1), failure);
+				try
+				{
+					Thread.sleep(delay);
+				}
+				catch (InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+					throw failure;
+				}
+			}
+			
+			// each attempt may have its own deadline
+			Settings attemptSettings = settings;
+			Long deadline = policy.getDeadline(tries);
+			if (deadline != null)
+			{
+				attemptSettings = Settings.copy(settings).deadline(deadline, TimeUnit.MILLISECONDS).build();
+			}
+			
+			try
+			{
+				return attempt.call(attemptSettings);
+			}
 			catch (RuntimeException e)
 			{
-				last = e;
-				logger.log(Level.WARNING, "Problem during try " + tries, e);
+				failure = e;
+				tries++;
 			}
 		}
-
-		throw last;
 	}
 
 	// TODO look at caching entity protos instead
@@ -429,28 +558,197 @@ public abstract class BaseObjectDatastore implements ObjectDatastore
 		}
 		else
 		{
-			return service(settings).put(transaction, entities);
+			List<List<Entity>> chunks = chunkEntities(entities, settings);
+			if (chunks.size() == 1)
+			{
+				return service(settings).put(transaction, entities);
+			}
+			return putChunks(chunks, settings, transaction);
 		}
 	}
 
-	private List<Key> putToDatastoreWithRetry(Collection<Entity> entities, Settings settings)
+	private List<Key> putToDatastoreWithRetry(final Collection<Entity> entities, Settings settings)
 	{
-		RuntimeException last = null;
-		int retries = defaultSettings.getRetries();
-		for (int tries = 0; tries < retries; tries++)
+		List<List<Entity>> chunks = chunkEntities(entities, settings);
+		if (chunks.size() > 1)
 		{
-			try
+			return putChunks(chunks, settings, null);
+		}
+		
+		return retry(settings, new Attempt<List<Key>>()
+		{
+			@Override
+			List<Key> call(Settings settings)
 			{
 				return service(settings).put(entities);
 			}
-			catch (RuntimeException e)
+		});
+	}
+
+	/**
+	 * Split entities into chunks that are within the size limits of a single call
+	 */
+	private List<List<Entity>> chunkEntities(Collection<Entity> entities, Settings settings)
+	{
+		List<List<Entity>> chunks = new ArrayList<List<Entity>>();
+		List<Entity> chunk = new ArrayList<Entity>();
+		int bytes = 0;
+		for (Entity entity : entities)
+		{
+			int size = estimateSize(entity);
+			if (!chunk.isEmpty() && (chunk.size() == settings.getBatchSize() || bytes + size > settings.getBatchBytes()))
 			{
-				last = e;
-				logger.log(Level.WARNING, "Problem during try " + tries, e);
+				chunks.add(chunk);
+				chunk = new ArrayList<Entity>();
+				bytes = 0;
 			}
+			chunk.add(entity);
+			bytes += size;
+		}
+		chunks.add(chunk);
+		return chunks;
+	}
+
+	/**
+	 * A rough estimate of the encoded size of an entity which only needs to be
+	 * good enough to keep calls below the datastore limits
+	 */
+	static int estimateSize(Entity entity)
+	{
+		int size = entity.getKey().toString().length();
+		for (Map.Entry<String, Object> property : entity.getProperties().entrySet())
+		{
+			size += property.getKey().length() + estimateSize(property.getValue());
 		}
+		return size;
+	}
 
-		throw last;
+	private static int estimateSize(Object value)
+	{
+		if (value instanceof String)
+		{
+			return ((String) value).length();
+		}
+		else if (value instanceof Text)
+		{
+			return ((Text) value).getValue().length();
+		}
+		else if (value instanceof Blob)
+		{
+			return ((Blob) value).getBytes().length;
+		}
+		else if (value instanceof ShortBlob)
+		{
+			return ((ShortBlob) value).getBytes().length;
+		}
+		else if (value instanceof Key)
+		{
+			return value.toString().length();
+		}
+		else if (value instanceof Collection<?>)
+		{
+			int size = 0;
+			for (Object item : (Collection<?>) value)
+			{
+				size += estimateSize(item);
+			}
+			return size;
+		}
+		else
+		{
+			return 8;
+		}
+	}
+
+	private List<Key> putChunks(List<List<Entity>> chunks, final Settings settings, final Transaction transaction)
+	{
+		List<List<Key>> keys = new ChunkedOperation<Entity, List<Key>>(settings)
+		{
+			@Override
+			protected Future<List<Key>> start(List<Entity> chunk)
+			{
+				return asyncService(settings).put(transaction, chunk);
+			}
+
+			@Override
+			protected List<Key> retry(List<Entity> chunk, Settings settings)
+			{
+				return service(settings).put(chunk);
+			}
+		}.run(chunks);
+		
+		List<Key> result = new ArrayList<Key>();
+		for (List<Key> chunk : keys)
+		{
+			result.addAll(chunk);
+		}
+		return result;
+	}
+
+	/**
+	 * Sends chunks of a large operation through the async service with a
+	 * limited number in progress and collects the results in chunk order
+	 */
+	private abstract class ChunkedOperation<I, R>
+	{
+		private final Settings settings;
+
+		ChunkedOperation(Settings settings)
+		{
+			this.settings = settings;
+		}
+
+		protected abstract Future<R> start(List<I> chunk);
+		
+		protected abstract R retry(List<I> chunk, Settings settings);
+
+		final List<R> run(List<List<I>> chunks)
+		{
+			List<R> results = new ArrayList<R>(chunks.size());
+			List<Future<R>> started = new ArrayList<Future<R>>(chunks.size());
+			int concurrent = Math.max(1, settings.getConcurrentBatches());
+			for (int i = 0; i < chunks.size(); i++)
+			{
+				// wait for the oldest chunk when too many are in progress
+				if (i - results.size() >= concurrent)
+				{
+					results.add(result(chunks.get(results.size()), started.get(results.size())));
+				}
+				started.add(start(chunks.get(i)));
+			}
+			while (results.size() < chunks.size())
+			{
+				results.add(result(chunks.get(results.size()), started.get(results.size())));
+			}
+			return results;
+		}
+
+		private R result(final List<I> chunk, Future<R> future)
+		{
+			RuntimeException last;
+			try
+			{
+				return future.get();
+			}
+			catch (InterruptedException e)
+			{
+				throw new IllegalStateException(e);
+			}
+			catch (ExecutionException e)
+			{
+				last = FutureResults.unchecked(e);
+			}
+			
+			// the async call was the first try
+			return BaseObjectDatastore.this.retry(settings, new Attempt<R>()
+			{
+				@Override
+				R call(Settings settings)
+				{
+					return retry(chunk, settings);
+				}
+			}, 1, last);
+		}
 	}
 
 	protected final Entity serviceGet(Key key, Settings settings) throws EntityNotFoundException
@@ -513,7 +811,7 @@ public abstract class BaseObjectDatastore implements ObjectDatastore
 		}
 	}
 
-	private Entity getFromDatastore(Key key, Settings settings) throws EntityNotFoundException
+	private Entity getFromDatastore(final Key key, Settings settings) throws EntityNotFoundException
 	{
 		try
 		{
@@ -527,16 +825,28 @@ public abstract class BaseObjectDatastore implements ObjectDatastore
 			}
 			
 			statistics.datastoreGets++;
-			Entity result;
 			if (transaction == null)
 			{
-				result = service(settings).get(key);
+				return retry(settings, new Attempt<Entity>()
+				{
+					@Override
+					Entity call(Settings settings)
+					{
+						try
+						{
+							return service(settings).get(key);
+						}
+						catch (EntityNotFoundException e)
+						{
+							return null;
+						}
+					}
+				});
 			}
 			else
 			{
-				result = service(settings).get(transaction, key);
+				return service(settings).get(transaction, key);
 			}
-			return result;
 		}
 		catch (EntityNotFoundException e)
 		{
@@ -667,7 +977,15 @@ public abstract class BaseObjectDatastore implements ObjectDatastore
 				// get entities from the datastore
 				statistics.datastoreGets++;
         //current transaction is checked for null
-				Map<Key, Entity> fromDatastore = service(settings).get(null, keys);
+				final Collection<Key> missing = keys;
+				Map<Key, Entity> fromDatastore = retry(settings, new Attempt<Map<Key, Entity>>()
+				{
+					@Override
+					Map<Key, Entity> call(Settings settings)
+					{
+						return service(settings).get(null, missing);
+					}
+				});
 
 				putToMemoryAndMemcache(fromDatastore.values(), settings.getCacheMode());
 
@@ -825,6 +1143,14 @@ public abstract class BaseObjectDatastore implements ObjectDatastore
 	}
 
 	private Map<Key, Entity> getFromMemcache(Collection<Key> keys, CacheMode mode)
+	{
+		return memcacheResults(getFromMemcacheLater(keys, mode));
+	}
+
+	/**
+	 * @return The started memcache get or null if none of the keys are cached there
+	 */
+	private Future<Map<String, Object>> getFromMemcacheLater(Collection<Key> keys, CacheMode mode)
 	{
 		// convert keys to string keys used in memcache to avoid serialising
 		Collection<String> stringKeys = null;
@@ -844,15 +1170,25 @@ public abstract class BaseObjectDatastore implements ObjectDatastore
 
 		if (stringKeys == null)
 		{
-			return Collections.emptyMap();
+			return null;
 		}
 
 		// check memcache for entities
 		statistics.memcacheGets++;
+		return getMemcacheService().getAll(stringKeys);
+	}
+
+	private Map<Key, Entity> memcacheResults(Future<Map<String, Object>> future)
+	{
+		if (future == null)
+		{
+			return Collections.emptyMap();
+		}
+		
 		Map<String, Object> cached;
 		try
 		{
-			cached = getMemcacheService().getAll(stringKeys).get();
+			cached = future.get();
 		}
 		catch (Exception e)
 		{
@@ -884,6 +1220,110 @@ public abstract class BaseObjectDatastore implements ObjectDatastore
 		return result;
 	}
 
+	/**
+	 * Checks the memory cache straight away and starts the memcache or datastore
+	 * get without blocking. Only keys that are not found in memcache are got 
+	 * from the datastore so when memcache is used the datastore get starts 
+	 * when the future is resolved.
+	 */
+	protected final Future<Map<Key, Entity>> serviceGetLater(Collection<Key> keys, Settings settings)
+	{
+		final Settings resolved = settings == null ? defaultSettings : settings;
+		statistics.gets++;
+		if (transaction != null)
+		{
+			statistics.datastoreGets++;
+			return asyncService(resolved).get(transaction, keys);
+		}
+
+		final CacheMode mode = resolved.getCacheMode();
+		final Map<Key, Entity> result = new HashMap<Key, Entity>(getFromMemory(keys, mode));
+		final List<Key> remaining = new ArrayList<Key>(keys.size());
+		for (Key key : keys)
+		{
+			if (!result.containsKey(key))
+			{
+				remaining.add(key);
+			}
+		}
+
+		final Future<Map<String, Object>> memcache = getFromMemcacheLater(remaining, mode);
+		final Future<Map<Key, Entity>> datastore;
+		if (memcache == null)
+		{
+			datastore = getFromDatastoreLater(remaining, resolved, result);
+		}
+		else
+		{
+			datastore = null;
+		}
+
+		return new DeferredFuture<Map<Key, Entity>>()
+		{
+			@Override
+			protected Map<Key, Entity> compute() throws Exception
+			{
+				Future<Map<Key, Entity>> fromDatastore = datastore;
+				if (memcache != null)
+				{
+					Map<Key, Entity> fromMemcache = memcacheResults(memcache);
+
+					// add all found in memcache back to the memory cache
+					putToMemory(fromMemcache, mode);
+					result.putAll(fromMemcache);
+					
+					remaining.removeAll(fromMemcache.keySet());
+					fromDatastore = getFromDatastoreLater(remaining, resolved, result);
+				}
+
+				if (fromDatastore != null)
+				{
+					Map<Key, Entity> entities = fromDatastore.get();
+					putToMemoryAndMemcache(entities.values(), mode);
+					result.putAll(entities);
+				}
+				return result;
+			}
+		};
+	}
+
+	/**
+	 * @return The started get or null if all keys were found in pending batched operations
+	 */
+	private Future<Map<Key, Entity>> getFromDatastoreLater(List<Key> keys, Settings settings, Map<Key, Entity> result)
+	{
+		// check pending batched operations
+		if (batched != null)
+		{
+			Iterator<Key> keyator = keys.iterator();
+			while (keyator.hasNext())
+			{
+				Key key = keyator.next();
+
+				// allow for null values which indicate a deleted entity
+				if (batched.containsKey(key))
+				{
+					Entity entity = batched.get(key);
+
+					// do not return anything for deleted entities
+					if (entity != null)
+					{
+						result.put(key, entity);
+					}
+					keyator.remove();
+				}
+			}
+		}
+
+		if (keys.isEmpty())
+		{
+			return null;
+		}
+
+		statistics.datastoreGets++;
+		return asyncService(settings).get(null, keys);
+	}
+
 	protected final void serviceDelete(Collection<Key> keys, CacheMode mode)
 	{
 		if (batched == null)
@@ -903,39 +1343,128 @@ public abstract class BaseObjectDatastore implements ObjectDatastore
 	{
 		if (transaction == null)
 		{
-			Collection<String> removeFromMemcache = null;
-			for (Key key : keys)
+			removeFromCaches(keys, mode);
+			deleteChunks(keys, null);
+		}
+		else
+		{
+			deleteChunks(keys, transaction);
+		}
+	}
+
+	/**
+	 * Starts deleting the keys without waiting for the datastore. Cached
+	 * entities are removed from memory and memcache for all keys at once.
+	 * A failed delete is retried when the result is waited for.
+	 */
+	protected final Future<Void> serviceDeleteLater(final Collection<Key> keys, CacheMode mode)
+	{
+		if (batched != null)
+		{
+			serviceDelete(keys, mode);
+			return new ImmediateFuture<Void>(null);
+		}
+		
+		if (transaction == null)
+		{
+			removeFromCaches(keys, mode);
+		}
+		final Future<Void> future = asyncService(defaultSettings).delete(transaction, keys);
+		return new DeferredFuture<Void>()
+		{
+			@Override
+			protected Void compute() throws Exception
 			{
-				CacheDetails details = kindToCache.get(key.getKind());
-				if (isCacheEnabled(details, mode))
+				try
 				{
-					if (details.cache != null)
-					{
-						details.cache.remove(key);
-					}
-
-					if (details.global)
+					return future.get();
+				}
+				catch (ExecutionException e)
+				{
+					// the async delete was the first try
+					return retry(defaultSettings, new Attempt<Void>()
 					{
-						if (removeFromMemcache == null)
+						@Override
+						Void call(Settings settings)
 						{
-							removeFromMemcache = new ArrayList<String>(keys.size());
+							service(settings).delete(keys);
+							return null;
 						}
-						removeFromMemcache.add(datastoreToMemcacheKey(key));
-					}
+					}, 1, FutureResults.unchecked(e));
 				}
 			}
+		};
+	}
 
-			if (removeFromMemcache != null)
+	private void removeFromCaches(Collection<Key> keys, CacheMode mode)
+	{
+		Collection<String> removeFromMemcache = null;
+		for (Key key : keys)
+		{
+			CacheDetails details = kindToCache.get(key.getKind());
+			if (isCacheEnabled(details, mode))
 			{
-				getMemcacheService().deleteAll(removeFromMemcache);
+				if (details.cache != null)
+				{
+					details.cache.remove(key);
+				}
+
+				if (details.global)
+				{
+					if (removeFromMemcache == null)
+					{
+						removeFromMemcache = new ArrayList<String>(keys.size());
+					}
+					removeFromMemcache.add(datastoreToMemcacheKey(key));
+				}
 			}
+		}
 
-			defaultDatastoreService.delete(keys);
+		if (removeFromMemcache != null)
+		{
+			getMemcacheService().deleteAll(removeFromMemcache);
 		}
-		else
+	}
+
+	private void deleteChunks(final Collection<Key> keys, final Transaction transaction)
+	{
+		int size = Math.max(1, defaultSettings.getBatchSize());
+		if (keys.size() <= size)
 		{
-			defaultDatastoreService.delete(transaction, keys);
+			if (transaction == null)
+			{
+				retry(defaultSettings, new Attempt<Void>()
+				{
+					@Override
+					Void call(Settings settings)
+					{
+						service(settings).delete(keys);
+						return null;
+					}
+				});
+			}
+			else
+			{
+				defaultDatastoreService.delete(transaction, keys);
+			}
+			return;
 		}
+		
+		new ChunkedOperation<Key, Void>(defaultSettings)
+		{
+			@Override
+			protected Future<Void> start(List<Key> chunk)
+			{
+				return asyncService(defaultSettings).delete(transaction, chunk);
+			}
+
+			@Override
+			protected Void retry(List<Key> chunk, Settings settings)
+			{
+				service(settings).delete(chunk);
+				return null;
+			}
+		}.run(Lists.partition(new ArrayList<Key>(keys), size));
 	}
 
 	// TODO return an iterator that updates the cache
@@ -951,6 +1480,23 @@ public abstract class BaseObjectDatastore implements ObjectDatastore
 		}
 	}
 
+	/**
+	 * Queries prepared by the async service start running as soon as their
+	 * results are requested and only block when they are first read.
+	 */
+	protected final PreparedQuery serviceAsyncPrepare(Query query, Settings settings)
+	{
+		AsyncDatastoreService service = asyncService(settings);
+		if (transaction == null)
+		{
+			return service.prepare(query);
+		}
+		else
+		{
+			return service.prepare(transaction, query);
+		}
+	}
+
 	public DatastoreService getDefaultService()
 	{
 		return defaultDatastoreService;
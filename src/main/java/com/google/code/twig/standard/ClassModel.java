@@ -0,0 +1,136 @@
+package com.google.code.twig.standard;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * The persistent fields of a class sorted by property name along with the
+ * special id and key fields. Built once for each configuration and never changed.
+ */
+public final class ClassModel
+{
+	private final Class<?> type;
+	private final List<FieldModel> fields;
+	private final List<Field> sortedFields;
+	private final Field[] storedFields;
+	private final FieldModel[] storedFieldModels;
+	private final Map<String, FieldModel> named;
+	private final FieldModel idField;
+	private final FieldModel keyField;
+
+	ClassModel(Class<?> type, List<FieldModel> fields)
+	{
+		this.type = type;
+		this.fields = ImmutableList.copyOf(fields);
+
+		ImmutableList.Builder<Field> builder = ImmutableList.builder();
+		List<FieldModel> stored = new ArrayList<FieldModel>(fields.size());
+		ImmutableMap.Builder<String, FieldModel> named = ImmutableMap.builder();
+		FieldModel idField = null;
+		FieldModel keyField = null;
+		for (FieldModel field : fields)
+		{
+			builder.add(field.getField());
+			named.put(field.getName(), field);
+			if (field.isStored())
+			{
+				stored.add(field);
+			}
+			if (idField == null && field.isId())
+			{
+				idField = field;
+			}
+			if (keyField == null && field.isKey())
+			{
+				keyField = field;
+			}
+		}
+		this.sortedFields = builder.build();
+		this.storedFieldModels = stored.toArray(new FieldModel[stored.size()]);
+		this.storedFields = new Field[storedFieldModels.length];
+		for (int i = 0; i < storedFieldModels.length; i++)
+		{
+			storedFields[i] = storedFieldModels[i].getField();
+		}
+		this.named = named.build();
+		this.idField = idField;
+		this.keyField = keyField;
+	}
+
+	public Class<?> getType()
+	{
+		return type;
+	}
+
+	/**
+	 * @return All accessible fields sorted by property name
+	 */
+	public List<FieldModel> getFields()
+	{
+		return fields;
+	}
+
+	/**
+	 * @return The same fields as {@link #getFields()} as reflection fields
+	 */
+	public List<Field> getSortedFields()
+	{
+		return sortedFields;
+	}
+
+	/**
+	 * The shared array is returned to avoid any allocation so must not be changed.
+	 * 
+	 * @return Only the stored fields sorted by property name
+	 */
+	public Field[] getStoredFields()
+	{
+		return storedFields;
+	}
+
+	/**
+	 * The shared array is returned to avoid any allocation so must not be changed.
+	 * 
+	 * @return The models of {@link #getStoredFields()}
+	 */
+	public FieldModel[] getStoredFieldModels()
+	{
+		return storedFieldModels;
+	}
+
+	/**
+	 * @param name The property name of the field
+	 * @return The field or null if there is no field with this name
+	 */
+	public FieldModel getField(String name)
+	{
+		return named.get(name);
+	}
+
+	/**
+	 * @return The field configured as the id or null
+	 */
+	public FieldModel getIdField()
+	{
+		return idField;
+	}
+
+	/**
+	 * @return The field configured to hold the datastore key or null
+	 */
+	public FieldModel getKeyField()
+	{
+		return keyField;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "ClassModel[" + type.getName() + "]";
+	}
+}
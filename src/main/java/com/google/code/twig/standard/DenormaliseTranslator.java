@@ -69,7 +69,7 @@ public class DenormaliseTranslator implements PropertyTranslator
 			Collection<Object> instances = (Collection<Object>) decoded;
 
 			// get all properties for each instance
-			Iterator<Set<Property>> propertySetorator = IterableTranslator.decodePropertySets(properties).iterator();
+			Iterator<Set<Property>> propertySetorator = IterableTranslator.transposePropertySets(properties).iterator();
 
 			Type elementType = Generics.getTypeParameter(type, Collection.class.getTypeParameters()[0]);
 
@@ -141,7 +141,7 @@ public class DenormaliseTranslator implements PropertyTranslator
 			public boolean apply(Property input)
 			{
 				// get a relative path for filtering
-				int size = path.getParts().size();
+				int size = path.getDepth();
 				Path relativePath = input.getPath().tail(size);
 				if (Path.EMPTY_PATH.equals(relativePath))
 				{
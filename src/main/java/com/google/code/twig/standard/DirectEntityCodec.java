@@ -0,0 +1,173 @@
+package com.google.code.twig.standard;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import com.google.appengine.api.datastore.DataTypeUtils;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Text;
+import com.google.code.twig.Path;
+import com.google.code.twig.Property;
+import com.google.code.twig.standard.TranslatorObjectDatastore.ObjectFieldTranslator;
+import com.google.code.twig.util.Reflection;
+import com.google.code.twig.util.SimpleProperty;
+import com.vercer.convert.TypeConverter;
+
+/**
+ * Encodes the top level fields of an instance straight into an {@link Entity}
+ * and decodes them straight from its property map. Only fields that hold
+ * native datastore values are handled here - all others such as relations,
+ * embedded, polymorphic or denormalised fields are passed to the usual
+ * translators with just the properties that belong to them.
+ *
+ * @see TranslatorObjectDatastore#setDirectCodecs(boolean)
+ */
+class DirectEntityCodec
+{
+	private final TranslatorObjectDatastore datastore;
+	private final ObjectFieldTranslator translator;
+	private final TypeConverter converter;
+
+	DirectEntityCodec(TranslatorObjectDatastore datastore, ObjectFieldTranslator translator, TypeConverter converter)
+	{
+		this.datastore = datastore;
+		this.translator = translator;
+		this.converter = converter;
+	}
+
+	/**
+	 * Encoding of the non-direct fields can change the key details so all
+	 * fields are written to a sink before the entity is created.
+	 */
+	Entity encode(Object instance, StandardEncodeCommand command)
+	{
+		ClassModel model = datastore.model(instance.getClass());
+
+		FieldModel[] fields = model.getStoredFieldModels();
+		EntitySink sink = new EntitySink(fields.length);
+		for (int i = 0; i < fields.length; i++)
+		{
+			FieldModel field = fields[i];
+			if (field.isDirectEncode() && isDefault(field))
+			{
+				Object value = Reflection.get(field.getAccessor(), instance);
+				if (value == null || DataTypeUtils.isSupportedType(value.getClass()))
+				{
+					// same as DirectTranslator
+					if (value instanceof String && ((String) value).length() > DataTypeUtils.MAX_STRING_PROPERTY_LENGTH)
+					{
+						value = new Text((String) value);
+					}
+					sink.property(field.getName(), value, field.isIndexed());
+					continue;
+				}
+
+				// a field declared as a super type can hold any value
+			}
+			sink.properties(translator.encodeField(instance, field.getField(), field.getPath(), false));
+		}
+
+		Entity entity = command.createEntity();
+
+		// will trigger referenced instances to be stored
+		sink.fill(entity, command);
+
+		return entity;
+	}
+
+	Object decode(Entity entity, Class<?> type, StandardDecodeCommand<?> command)
+	{
+		ClassModel model = datastore.model(type);
+		Map<String, Object> values = entity.getProperties();
+
+		// group the properties of translated fields by their first path part
+		Map<String, Set<Property>> grouped = null;
+		for (Map.Entry<String, Object> entry : values.entrySet())
+		{
+			String name = entry.getKey();
+			int end = firstSeperator(name);
+			String part = end < 0 ? name : name.substring(0, end);
+			FieldModel field = end < 0 ? model.getField(part) : null;
+			if (field == null || !isDirectDecode(field) || entry.getValue() == null)
+			{
+				if (grouped == null)
+				{
+					grouped = new HashMap<String, Set<Property>>();
+				}
+				Set<Property> properties = grouped.get(part);
+				if (properties == null)
+				{
+					properties = new TreeSet<Property>();
+					grouped.put(part, properties);
+				}
+				properties.add(new SimpleProperty(new Path(name), entry.getValue(), false));
+			}
+		}
+
+		Object instance = translator.createInstance(type);
+
+		FieldModel[] fields = model.getStoredFieldModels();
+		for (int i = 0; i < fields.length; i++)
+		{
+			FieldModel field = fields[i];
+
+			// fields can change the activation depth for following fields
+			command.setDepth(field.activationDepth(command.getDepth()));
+
+			boolean direct = isDirectDecode(field);
+			Object value = values.get(field.getName());
+			if (direct && value != null)
+			{
+				// leave other properties with this prefix unused like DirectTranslator
+				if (value instanceof Text && field.getType() == String.class)
+				{
+					value = ((Text) value).getValue();
+				}
+				value = converter.convert(value, field.getType());
+				Reflection.set(field.getAccessor(), instance, value);
+			}
+			else if (direct && !values.containsKey(field.getName()))
+			{
+				// leave the default value of missing fields
+			}
+			else
+			{
+				Set<Property> properties = grouped == null ? null : grouped.get(field.getName());
+				if (properties == null)
+				{
+					properties = Collections.emptySet();
+				}
+				translator.decodeField(instance, field.getField(), field.getPath(), properties);
+			}
+		}
+
+		return instance;
+	}
+
+	private boolean isDirectDecode(FieldModel field)
+	{
+		return field.isDirectDecode() && isDefault(field);
+	}
+
+	// a sub-class can select another translator for a plain value field
+	private boolean isDefault(FieldModel field)
+	{
+		return datastore.fieldTranslator(field.getField()) == datastore.getDefaultTranslator();
+	}
+
+	static int firstSeperator(String name)
+	{
+		for (int i = 0; i < name.length(); i++)
+		{
+			char c = name.charAt(i);
+			if (c == '.' || c == '$' || c == ':')
+			{
+				return i;
+			}
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,115 @@
+package com.google.code.twig.standard;
+
+import java.util.Collections;
+import java.util.Set;
+
+import com.google.code.twig.Property;
+import com.google.code.twig.util.PropertySets;
+import com.google.code.twig.util.collections.ArraySortedSet;
+
+/**
+ * The sorted property names of an entity and the range of those properties
+ * that belongs to each stored field of its type. Entities of the same kind
+ * almost always have the same properties so once a shape is learned the
+ * properties can be handed to each field by index without comparing paths.
+ */
+final class EntityShape
+{
+	private final ClassModel model;
+	private final String[] names;
+
+	// the properties of stored field i are from starts[i] until ends[i]
+	private final int[] starts;
+	private final int[] ends;
+
+	private EntityShape(ClassModel model, String[] names, int[] starts, int[] ends)
+	{
+		this.model = model;
+		this.names = names;
+		this.starts = starts;
+		this.ends = ends;
+	}
+
+	/**
+	 * @return The shape of these properties or null if any property does not
+	 *         belong to a stored field of the model
+	 */
+	static EntityShape learn(ClassModel model, ArraySortedSet<Property> properties)
+	{
+		FieldModel[] fields = model.getStoredFieldModels();
+		int[] starts = new int[fields.length];
+		int[] ends = new int[fields.length];
+		String[] names = new String[properties.size()];
+
+		int field = 0;
+		int index = 0;
+		while (index < names.length)
+		{
+			String part = firstPart(names[index] = PropertySets.name(properties.get(index)));
+
+			// fields without properties are left with an empty range
+			while (field < fields.length && fields[field].getName().compareTo(part) < 0)
+			{
+				field++;
+			}
+
+			if (field == fields.length || !fields[field].getName().equals(part))
+			{
+				return null;
+			}
+
+			starts[field] = index;
+			for (index++; index < names.length; index++)
+			{
+				names[index] = PropertySets.name(properties.get(index));
+				if (!firstPart(names[index]).equals(part))
+				{
+					break;
+				}
+			}
+			ends[field] = index;
+			field++;
+		}
+
+		return new EntityShape(model, names, starts, ends);
+	}
+
+	private static String firstPart(String name)
+	{
+		int end = DirectEntityCodec.firstSeperator(name);
+		return end < 0 ? name : name.substring(0, end);
+	}
+
+	boolean matches(ArraySortedSet<Property> properties)
+	{
+		if (properties.size() != names.length)
+		{
+			return false;
+		}
+		for (int i = 0; i < names.length; i++)
+		{
+			if (!names[i].equals(PropertySets.name(properties.get(i))))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	ClassModel getModel()
+	{
+		return model;
+	}
+
+	/**
+	 * @param field The index of the field in {@link ClassModel#getStoredFieldModels()}
+	 */
+	Set<Property> fieldProperties(ArraySortedSet<Property> properties, int field)
+	{
+		if (starts[field] == ends[field])
+		{
+			return Collections.emptySet();
+		}
+		return properties.slice(starts[field], ends[field]);
+	}
+}
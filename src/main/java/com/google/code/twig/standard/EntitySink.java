@@ -0,0 +1,90 @@
+package com.google.code.twig.standard;
+
+import java.util.Arrays;
+import java.util.Set;
+
+import com.google.appengine.api.datastore.Entity;
+import com.google.code.twig.EncodeSink;
+import com.google.code.twig.Property;
+import com.google.code.twig.util.SinglePropertySet;
+
+/**
+ * Holds the encoded properties of an instance in flat arrays until its key
+ * is known and the entity can be created. Object references are only
+ * resolved when the entity is written which may store referenced instances.
+ */
+final class EntitySink implements EncodeSink
+{
+	private String[] names;
+	private Object[] values;
+	private boolean[] indexed;
+	private int size;
+
+	EntitySink(int capacity)
+	{
+		capacity = Math.max(capacity, 4);
+		names = new String[capacity];
+		values = new Object[capacity];
+		indexed = new boolean[capacity];
+	}
+
+	public void property(String name, Object value, boolean indexed)
+	{
+		if (size == names.length)
+		{
+			int capacity = size * 2;
+			names = Arrays.copyOf(names, capacity);
+			values = Arrays.copyOf(values, capacity);
+			this.indexed = Arrays.copyOf(this.indexed, capacity);
+		}
+		names[size] = name;
+		values[size] = value;
+		this.indexed[size] = indexed;
+		size++;
+	}
+
+	public void properties(Set<Property> properties)
+	{
+		if (properties instanceof SinglePropertySet)
+		{
+			// optimised case for our own implementation
+			SinglePropertySet single = (SinglePropertySet) properties;
+			property(single.getPath().toString(), single.getValue(), single.isIndexed());
+		}
+		else
+		{
+			for (Property property : properties)
+			{
+				property(property.getPath().toString(), property.getValue(), property.isIndexed());
+			}
+		}
+	}
+
+	/**
+	 * Set all properties on the entity and resolve object references
+	 */
+	void fill(Entity entity, StandardEncodeCommand command)
+	{
+		for (int i = 0; i < size; i++)
+		{
+			Object value;
+			try
+			{
+				value = command.dereferencePropertyValue(values[i]);
+			}
+			catch (Throwable t)
+			{
+				throw new RuntimeException("Problem de-referencing property " + names[i] + " with value " + values[i], t);
+			}
+
+			if (indexed[i])
+			{
+				entity.setProperty(names[i], value);
+			}
+			else
+			{
+				entity.setUnindexedProperty(names[i], value);
+			}
+		}
+	}
+}
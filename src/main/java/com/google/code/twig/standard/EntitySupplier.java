@@ -1,26 +1,49 @@
 package com.google.code.twig.standard;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Future;
 
 import com.google.appengine.api.datastore.Entity;
 import com.google.appengine.api.datastore.Key;
 import com.google.code.twig.Settings;
 
+/**
+ * Gets the entities ordered by several sinks in shared bulk gets. The get
+ * of the next chunk is started as soon as the current chunk is demanded.
+ */
 public class EntitySupplier
 {
 	interface EntitySink
 	{
-		void pickup();
+		/**
+		 * @param ordered The keys this sink ordered for the chunk in order
+		 */
+		void pickup(List<Key> ordered);
 		Key order();
 	}
 
+	// the keys ordered by each sink and the started get of one chunk
+	private static class Chunk
+	{
+		final List<List<Key>> ordered;
+		final Future<Map<Key, Entity>> entities;
+
+		Chunk(List<List<Key>> ordered, Future<Map<Key, Entity>> entities)
+		{
+			this.ordered = ordered;
+			this.entities = entities;
+		}
+	}
+
 	private final TranslatorObjectDatastore datastore;
 	private List<EntitySink> sinks = new ArrayList<EntitySink>();
 	private Map<Key, Entity> keysToEntities;
+	private Chunk next;
 	private final int chunk;
 	private final Settings settings;
 	
@@ -35,9 +58,59 @@ public class EntitySupplier
 	{
 		sinks.add(sink);
 	}
+
+	/**
+	 * @return True if a chunk has been ordered but not yet picked up
+	 */
+	public boolean hasPending()
+	{
+		return next != null;
+	}
+	
+	/**
+	 * Start getting the first chunk before any sink demands it
+	 */
+	public void start()
+	{
+		if (next == null)
+		{
+			next = order();
+		}
+	}
 	
 	public void demand()
 	{
+		Chunk current = next == null ? order() : next;
+
+		// start the get of the following chunk before waiting for this one
+		next = order();
+		
+		if (current == null)
+		{
+			keysToEntities = Collections.emptyMap();
+			for (EntitySink sink : sinks)
+			{
+				sink.pickup(Collections.<Key>emptyList());
+			}
+			return;
+		}
+		
+		keysToEntities = PrefetchParentIterator.resolve(current.entities);
+		
+		for (int i = 0; i < sinks.size(); i++)
+		{
+			sinks.get(i).pickup(current.ordered.get(i));
+		}
+	}
+
+	private Chunk order()
+	{
+		List<List<Key>> ordered = new ArrayList<List<Key>>(sinks.size());
+		for (int i = 0; i < sinks.size(); i++)
+		{
+			ordered.add(new ArrayList<Key>());
+		}
+		
 		Set<Key> orders = new HashSet<Key>(chunk);
 		int index = 0;
 		boolean added = false;
@@ -47,6 +120,7 @@ public class EntitySupplier
 			Key order = sink.order();
 			if (order != null)
 			{
+				ordered.get(index).add(order);
 				orders.add(order);
 				added = true;
 			}
@@ -61,12 +135,12 @@ public class EntitySupplier
 			}
 		}
 		
-		keysToEntities = datastore.serviceGet(orders, settings);
-		
-		for (EntitySink sink : sinks)
+		if (orders.isEmpty())
 		{
-			sink.pickup();
+			return null;
 		}
+		
+		return new Chunk(ordered, datastore.serviceGetLater(orders, settings));
 	}
 	
 	public Entity get(Key key)
@@ -0,0 +1,189 @@
+package com.google.code.twig.standard;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Type;
+import java.util.Set;
+
+import com.google.code.twig.Path;
+import com.google.code.twig.Path.Part;
+import com.google.code.twig.util.FieldAccessor;
+
+/**
+ * Configuration of a single persistent field resolved once so that encoding
+ * and decoding do not need to look up annotations for every instance. Models
+ * do not reference a datastore so they are shared by all datastores with the
+ * same configuration - each datastore selects its own translator by the role.
+ */
+public final class FieldModel
+{
+	// activation depth value used when the field does not override it
+	static final int INHERIT_DEPTH = Integer.MIN_VALUE;
+
+	/**
+	 * How the configuration says the field value should be translated
+	 */
+	public enum Role
+	{
+		PARENT, CHILD, RELATION, CONTAINER, ID, POLYMORPHIC, EMBED, KEY, VALUE
+	}
+
+	private final Field field;
+	private final String name;
+	private final boolean stored;
+	private final boolean indexed;
+	private final Type type;
+	private final int activationDepth;
+	private final boolean id;
+	private final boolean key;
+	private final Role role;
+	private final Set<String> denormalise;
+	private final int serializationThreshold;
+	private final FieldAccessor accessor;
+	private final boolean directEncode;
+	private final boolean directDecode;
+	private final Part part;
+	private final Path path;
+
+	FieldModel(Field field, String name, boolean stored, boolean indexed, Type type,
+			int activationDepth, boolean id, boolean key, Role role, Set<String> denormalise,
+			int serializationThreshold, boolean directEncode, boolean directDecode)
+	{
+		this.field = field;
+		this.name = name;
+		this.stored = stored;
+		this.indexed = indexed;
+		this.type = type;
+		this.activationDepth = activationDepth;
+		this.id = id;
+		this.key = key;
+		this.role = role;
+		this.denormalise = denormalise;
+		this.serializationThreshold = serializationThreshold;
+		this.accessor = FieldAccessor.of(field);
+		this.directEncode = directEncode;
+		this.directDecode = directDecode;
+
+		// only stored fields need valid property names
+		this.part = stored ? Path.fieldPart(name) : null;
+		this.path = stored ? Path.EMPTY_PATH.child(part) : null;
+	}
+
+	public Field getField()
+	{
+		return field;
+	}
+
+	/**
+	 * @return The property path part used for this field
+	 */
+	public String getName()
+	{
+		return name;
+	}
+
+	/**
+	 * @return The shared path part of this field or null if it is not stored
+	 */
+	public Part getPart()
+	{
+		return part;
+	}
+
+	/**
+	 * @return The path of this field when it is at the top level of an entity
+	 */
+	public Path getPath()
+	{
+		return path;
+	}
+
+	public boolean isStored()
+	{
+		return stored;
+	}
+
+	public boolean isIndexed()
+	{
+		return indexed;
+	}
+
+	/**
+	 * @return The type the field value is stored as
+	 */
+	public Type getType()
+	{
+		return type;
+	}
+
+	/**
+	 * @param depth The activation depth of the enclosing instance
+	 * @return The depth configured for this field or the current depth
+	 */
+	public int activationDepth(int depth)
+	{
+		return activationDepth == INHERIT_DEPTH ? depth : activationDepth;
+	}
+
+	public boolean isId()
+	{
+		return id;
+	}
+
+	public boolean isKey()
+	{
+		return key;
+	}
+
+	public Role getRole()
+	{
+		return role;
+	}
+
+	/**
+	 * @return The paths of a related instance to store with the relation or null
+	 */
+	public Set<String> getDenormalise()
+	{
+		return denormalise;
+	}
+
+	/**
+	 * @return The number of properties above which the value is serialized or -1
+	 */
+	public int getSerializationThreshold()
+	{
+		return serializationThreshold;
+	}
+
+	/**
+	 * @return Reads and writes the field value without reflection checks
+	 */
+	public FieldAccessor getAccessor()
+	{
+		return accessor;
+	}
+
+	/**
+	 * Only true when the datastore also uses its default translator for the field
+	 * 
+	 * @return True if native values can be written straight to an Entity
+	 */
+	public boolean isDirectEncode()
+	{
+		return directEncode;
+	}
+
+	/**
+	 * @return True if the field can be read straight from an Entity property
+	 */
+	public boolean isDirectDecode()
+	{
+		return directDecode;
+	}
+
+	@Override
+	public String toString()
+	{
+		return field.toString();
+	}
+}
@@ -4,12 +4,15 @@ import java.lang.reflect.Type;
 import java.util.AbstractSet;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.SortedSet;
 import java.util.TreeSet;
 
 import com.google.appengine.api.datastore.Key;
@@ -20,9 +23,11 @@ import com.google.code.twig.translator.DecoratingTranslator;
 import com.google.code.twig.util.PropertySets;
 import com.google.code.twig.util.SimpleProperty;
 import com.google.code.twig.util.SinglePropertySet;
+import com.google.code.twig.util.collections.ArraySortedSet;
 import com.google.code.twig.util.generic.Generics;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.google.common.collect.UnmodifiableIterator;
 
 public class IterableTranslator extends DecoratingTranslator
 {
@@ -67,7 +72,7 @@ public class IterableTranslator extends DecoratingTranslator
 			return datastore.getTypeConverter().convert(list, type);
 		}
 
-		List<Set<Property>> propertySets = decodePropertySets(properties);
+		Iterable<Set<Property>> propertySets = transposePropertySets(properties);
 
 		// handles the tricky task of finding what type of list we have
 		Type componentType = Generics.getTypeParameter(type, Iterable.class.getTypeParameters()[0]);
@@ -106,50 +111,111 @@ public class IterableTranslator extends DecoratingTranslator
 
 	public static List<Set<Property>> decodePropertySets(final Set<Property> properties)
 	{
-		// need to adapt a set of property lists into a list of property sets
-		List<Set<Property>> propertySets = Lists.newArrayList();
-		boolean complete = false;
-		for (int index = 0; !complete; index++)
+		return Lists.newArrayList(transposePropertySets(properties));
+	}
+
+	/**
+	 * Adapts a set of property lists into the property sets of each item. The
+	 * value lists are found once and the properties of each item are only 
+	 * created when it is iterated.
+	 */
+	public static Iterable<Set<Property>> transposePropertySets(Set<Property> properties)
+	{
+		// item properties are sorted in the same order as the lists
+		if (properties instanceof SortedSet<?> == false)
 		{
-			complete = true;
-			Set<Property> result = new TreeSet<Property>();
-			for (Property property : properties)
-			{
-				List<?> values;
-				Path itemPath = property.getPath();
-				Object list = property.getValue();
+			properties = new TreeSet<Property>(properties);
+		}
+		
+		final Path[] paths = new Path[properties.size()];
+		final List<?>[] lists = new List<?>[properties.size()];
+		int count = 0;
+		int length = 0;
+		for (Property property : properties)
+		{
+			Object list = property.getValue();
 
-				// every property should be of the same type but just repeat check
-				if (list instanceof List<?>)
-				{
-					// we have a list of property values
-					values = (List<?>) list;
-				}
-				else
-				{
-					throw new IllegalStateException("Expected a List but found " + list);
-				}
+			// every property should be of the same type but just repeat check
+			if (list instanceof List<?> == false)
+			{
+				throw new IllegalStateException("Expected a List but found " + list);
+			}
 
-				if (values.size() > index)
+			paths[count] = property.getPath();
+			lists[count] = (List<?>) list;
+			length = Math.max(length, lists[count].size());
+			count++;
+		}
+		
+		final int items = length;
+		return new Iterable<Set<Property>>()
+		{
+			public Iterator<Set<Property>> iterator()
+			{
+				return new UnmodifiableIterator<Set<Property>>()
 				{
-					Object value = values.get(index);
-
-					// null values are place holders for missing properties
-					if (value != null)
+					int index;
+					
+					public boolean hasNext()
 					{
-						result.add(new SimpleProperty(itemPath, value, true));
+						return index < items;
 					}
-					// at least one property has items so we are not done yet
-					complete = false;
-				}
-			}
 
-			if (complete == false)
-			{
-				propertySets.add(result);
+					public Set<Property> next()
+					{
+						if (!hasNext())
+						{
+							throw new NoSuchElementException();
+						}
+						
+						Property[] item = null;
+						Path path = null;
+						Object value = null;
+						int size = 0;
+						for (int i = 0; i < lists.length; i++)
+						{
+							if (lists[i].size() > index)
+							{
+								Object next = lists[i].get(index);
+								
+								// null values are place holders for missing properties
+								if (next == null)
+								{
+									continue;
+								}
+								
+								if (size == 1)
+								{
+									item = new Property[lists.length];
+									item[0] = new SimpleProperty(path, value, true);
+								}
+								if (size > 0)
+								{
+									item[size] = new SimpleProperty(paths[i], next, true);
+								}
+								path = paths[i];
+								value = next;
+								size++;
+							}
+						}
+						index++;
+
+						if (size == 0)
+						{
+							return Collections.emptySet();
+						}
+						else if (size == 1)
+						{
+							return new SinglePropertySet(path, value, true);
+						}
+						else
+						{
+							return new ArraySortedSet<Property>(item, 0, size, null);
+						}
+					}
+				};
 			}
-		}
-		return propertySets;
+		};
 	}
 
 	protected Collection<Object> createCollection(Type type)
@@ -0,0 +1,79 @@
+package com.google.code.twig.standard;
+
+import java.lang.reflect.Type;
+
+import com.vercer.convert.BaseTypeConverter;
+import com.vercer.convert.CombinedTypeConverter;
+import com.vercer.convert.Converter;
+import com.vercer.convert.ConverterRegistry;
+
+/**
+ * The converters of one datastore over the registry shared by all instances
+ * of its class. Converters registered with a datastore are kept in its own
+ * registry, created when the first one is registered, and used before the
+ * shared converters which are never changed.
+ */
+final class LayeredConverterRegistry extends BaseTypeConverter implements ConverterRegistry
+{
+	private final ConverterRegistry shared;
+	private volatile CombinedTypeConverter local;
+
+	LayeredConverterRegistry(ConverterRegistry shared)
+	{
+		this.shared = shared;
+	}
+
+	ConverterRegistry getShared()
+	{
+		return shared;
+	}
+
+	@Override
+	public <T> T convert(Object instance, Type source, Type target) throws CouldNotConvertException
+	{
+		CombinedTypeConverter local = this.local;
+		if (local != null && instance != null)
+		{
+			Converter<?, ?> converter = local.converter(source, target);
+			if (converter != null)
+			{
+				return CombinedTypeConverter.typesafe(converter, instance);
+			}
+		}
+		return shared.convert(instance, source, target);
+	}
+
+	@Override
+	public Converter<?, ?> converter(Type source, Type target)
+	{
+		CombinedTypeConverter local = this.local;
+		if (local != null)
+		{
+			Converter<?, ?> converter = local.converter(source, target);
+			if (converter != null)
+			{
+				return converter;
+			}
+		}
+		return shared.converter(source, target);
+	}
+
+	@Override
+	public synchronized void register(Converter<?, ?> converter)
+	{
+		if (local == null)
+		{
+			local = new CombinedTypeConverter();
+		}
+		local.register(converter);
+	}
+
+	@Override
+	public void registerAll(Iterable<Converter<?, ?>> specifics)
+	{
+		for (Converter<?, ?> converter : specifics)
+		{
+			register(converter);
+		}
+	}
+}
@@ -0,0 +1,261 @@
+package com.google.code.twig.standard;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.net.JarURLConnection;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.logging.Logger;
+
+import com.google.code.twig.Registry;
+import com.google.code.twig.annotation.Entity;
+import com.google.code.twig.configuration.DefaultConfiguration;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Optional start-up step that finds the model classes and does the reflection
+ * and type conversion look-ups up front rather than during the first request
+ * that uses each model. The models are shared by every datastore created
+ * with the same configuration instance so it only needs to run once at
+ * start-up with any one of them.
+ *
+ * <pre>
+ * ModelBootstrap.Report report = new ModelBootstrap(datastore)
+ * 	.scan("com.example.model")
+ * 	.warmUp();
+ * </pre>
+ */
+public class ModelBootstrap
+{
+	private static final Logger log = Logger.getLogger(ModelBootstrap.class.getName());
+
+	private final TranslatorObjectDatastore datastore;
+	private final Set<Class<?>> types = new LinkedHashSet<Class<?>>();
+	private ClassLoader loader = Thread.currentThread().getContextClassLoader();
+	private Registry registry;
+
+	public ModelBootstrap(TranslatorObjectDatastore datastore)
+	{
+		this.datastore = datastore;
+		if (loader == null)
+		{
+			loader = ModelBootstrap.class.getClassLoader();
+		}
+	}
+
+	/**
+	 * The result of warming up which is never changed
+	 */
+	public static class Report
+	{
+		private final List<Class<?>> types;
+		private final long millis;
+
+		Report(List<Class<?>> types, long millis)
+		{
+			this.types = types;
+			this.millis = millis;
+		}
+
+		/**
+		 * @return The types that were found and warmed up
+		 */
+		public List<Class<?>> getTypes()
+		{
+			return types;
+		}
+
+		public long getMillis()
+		{
+			return millis;
+		}
+
+		@Override
+		public String toString()
+		{
+			return "Warmed up " + types.size() + " models in " + millis + "ms";
+		}
+	}
+
+	public ModelBootstrap classLoader(ClassLoader loader)
+	{
+		this.loader = loader;
+		return this;
+	}
+
+	/**
+	 * Also register the models found with a {@link Registry}
+	 */
+	public ModelBootstrap registry(Registry registry)
+	{
+		this.registry = registry;
+		return this;
+	}
+
+	/**
+	 * Add a model class which does not need to be annotated
+	 */
+	public ModelBootstrap type(Class<?> type)
+	{
+		types.add(type);
+		return this;
+	}
+
+	/**
+	 * Add all classes annotated with {@link Entity} in these packages or their sub-packages
+	 */
+	public ModelBootstrap scan(String... packages)
+	{
+		for (String name : packages)
+		{
+			String path = name.replace('.', '/');
+			try
+			{
+				Enumeration<URL> resources = loader.getResources(path);
+				while (resources.hasMoreElements())
+				{
+					URL url = resources.nextElement();
+					if ("file".equals(url.getProtocol()))
+					{
+						scanDirectory(new File(URLDecoder.decode(url.getPath(), "UTF-8")), name);
+					}
+					else if ("jar".equals(url.getProtocol()))
+					{
+						scanJar(((JarURLConnection) url.openConnection()).getJarFile(), path);
+					}
+				}
+			}
+			catch (IOException e)
+			{
+				throw new IllegalStateException("Could not scan package " + name, e);
+			}
+		}
+		return this;
+	}
+
+	private void scanDirectory(File directory, String name)
+	{
+		File[] files = directory.listFiles();
+		if (files == null)
+		{
+			return;
+		}
+
+		for (File file : files)
+		{
+			if (file.isDirectory())
+			{
+				scanDirectory(file, name + "." + file.getName());
+			}
+			else if (file.getName().endsWith(".class"))
+			{
+				String simple = file.getName().substring(0, file.getName().length() - ".class".length());
+				candidate(name + "." + simple);
+			}
+		}
+	}
+
+	private void scanJar(JarFile jar, String path)
+	{
+		Enumeration<JarEntry> entries = jar.entries();
+		while (entries.hasMoreElements())
+		{
+			String entry = entries.nextElement().getName();
+			if (entry.startsWith(path + "/") && entry.endsWith(".class"))
+			{
+				String name = entry.substring(0, entry.length() - ".class".length());
+				candidate(name.replace('/', '.'));
+			}
+		}
+	}
+
+	private void candidate(String name)
+	{
+		try
+		{
+			// do not initialise classes that are not models
+			Class<?> type = Class.forName(name, false, loader);
+			if (type.isAnnotationPresent(Entity.class))
+			{
+				types.add(type);
+			}
+		}
+		catch (ClassNotFoundException e)
+		{
+			throw new IllegalStateException(e);
+		}
+		catch (LinkageError e)
+		{
+			// ignore classes which depend on missing classes
+		}
+	}
+
+	/**
+	 * Register the kind names of all types, build their models and publish
+	 * an immutable snapshot of them
+	 */
+	public Report warmUp()
+	{
+		long start = System.currentTimeMillis();
+
+		// register all names before the kinds are calculated
+		for (Class<?> type : types)
+		{
+			register(type);
+		}
+
+		Set<Class<?>> warmed = new HashSet<Class<?>>();
+		for (Class<?> type : types)
+		{
+			datastore.getConfiguration().typeToKind(type);
+			datastore.warmUp(type, warmed);
+		}
+		datastore.freezeModels();
+
+		Report report = new Report(ImmutableList.copyOf(types), System.currentTimeMillis() - start);
+		log.info(report.toString());
+		return report;
+	}
+
+	private void register(Class<?> type)
+	{
+		// the annotation is inherited so only register the class that declares it
+		Entity annotation = null;
+		for (Annotation declared : type.getDeclaredAnnotations())
+		{
+			if (declared instanceof Entity)
+			{
+				annotation = (Entity) declared;
+			}
+		}
+
+		if (annotation == null || annotation.kind().isEmpty())
+		{
+			return;
+		}
+
+		// allow the same types to be warmed up more than once
+		String existing = DefaultConfiguration.registeredTypeName(type);
+		if (existing == null)
+		{
+			DefaultConfiguration.registerTypeName(type, annotation.kind());
+		}
+		else if (!existing.equals(annotation.kind()))
+		{
+			throw new IllegalStateException("Type " + type + " was already mapped to kind name " + existing);
+		}
+
+		if (registry != null)
+		{
+			registry.register(type);
+		}
+	}
+}
@@ -0,0 +1,83 @@
+package com.google.code.twig.standard;
+
+import java.lang.reflect.Field;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.code.twig.configuration.Configuration;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+/**
+ * The class and field models built from one configuration instance. Models
+ * do not depend on the state of a datastore so they are shared by every
+ * datastore created with the same configuration and index default.
+ */
+final class ModelCache
+{
+	// weak keys compare by identity and allow configurations to be collected
+	private static final ConcurrentMap<Configuration, ModelCache> indexed = createCaches();
+	private static final ConcurrentMap<Configuration, ModelCache> unindexed = createCaches();
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static ConcurrentMap<Configuration, ModelCache> createCaches()
+	{
+		CacheBuilder cacheBuilder = CacheBuilder.newBuilder();
+		cacheBuilder.weakKeys();
+		return cacheBuilder.build().asMap();
+	}
+
+	final ConcurrentMap<Class<?>, ClassModel> classModels = Maps.newConcurrentMap();
+	final ConcurrentMap<Field, FieldModel> fieldModels = Maps.newConcurrentMap();
+
+	// the learned property layouts of entities of each kind
+	final ConcurrentMap<String, EntityShape[]> shapes = Maps.newConcurrentMap();
+
+	// replaced rather than changed so the warmed up models are read without locking
+	private volatile Map<Class<?>, ClassModel> frozen = ImmutableMap.of();
+
+	private ModelCache()
+	{
+	}
+
+	/**
+	 * @return The model of the type or null if it has not been built
+	 */
+	ClassModel classModel(Class<?> type)
+	{
+		ClassModel model = frozen.get(type);
+		if (model == null)
+		{
+			model = classModels.get(type);
+		}
+		return model;
+	}
+
+	/**
+	 * Publish an immutable snapshot of all the class models built so far
+	 */
+	void freeze()
+	{
+		frozen = ImmutableMap.copyOf(classModels);
+	}
+
+	/**
+	 * @param index The default for fields that are not configured to be indexed or not
+	 */
+	static ModelCache of(Configuration configuration, boolean index)
+	{
+		ConcurrentMap<Configuration, ModelCache> caches = index ? indexed : unindexed;
+		ModelCache cache = caches.get(configuration);
+		if (cache == null)
+		{
+			cache = new ModelCache();
+			ModelCache existing = caches.putIfAbsent(configuration, cache);
+			if (existing != null)
+			{
+				cache = existing;
+			}
+		}
+		return cache;
+	}
+}
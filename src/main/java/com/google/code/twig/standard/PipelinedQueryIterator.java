@@ -0,0 +1,158 @@
+package com.google.code.twig.standard;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
+import com.google.appengine.api.datastore.Cursor;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Index;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.QueryResultIterator;
+import com.google.code.twig.Settings;
+import com.google.common.collect.AbstractIterator;
+
+/**
+ * Runs a query as a series of chunks of fetchNextBy results which are
+ * started asynchronously ahead of the chunk being iterated. Chunks after the
+ * last known cursor are started with an offset from it so several can be
+ * fetched at the same time. Only a bounded number of chunks are in flight.
+ */
+class PipelinedQueryIterator extends AbstractIterator<Entity> implements QueryResultIterator<Entity>
+{
+	private final TranslatorObjectDatastore datastore;
+	private final Query query;
+	private final Settings settings;
+	private final FetchOptions options;
+	private final int size;
+	private final int chunks;
+
+	// started chunks that have not been iterated yet
+	private final Deque<QueryResultIterator<Entity>> pending = new ArrayDeque<QueryResultIterator<Entity>>();
+
+	// the cursor at the end of the last chunk taken and the position after it
+	private Cursor base;
+	private int offset;
+	private int ahead;
+
+	// results left to start when there is a limit
+	private Integer remaining;
+
+	private QueryResultIterator<Entity> current;
+	private int taken;
+	private boolean exhausted;
+
+	/**
+	 * @param options The fetch options of the whole query or null
+	 * @param size The number of results in each chunk
+	 * @param chunks The maximum number of chunks started ahead
+	 */
+	PipelinedQueryIterator(TranslatorObjectDatastore datastore, Query query, Settings settings, FetchOptions options, int size, int chunks)
+	{
+		this.datastore = datastore;
+		this.query = query;
+		this.settings = settings;
+		this.options = options;
+		this.size = size;
+		this.chunks = chunks;
+
+		if (options != null)
+		{
+			base = options.getStartCursor();
+			if (options.getOffset() != null)
+			{
+				offset = options.getOffset();
+			}
+			remaining = options.getLimit();
+		}
+
+		fill();
+	}
+
+	private void fill()
+	{
+		while (!exhausted && pending.size() < chunks && (remaining == null || remaining > 0))
+		{
+			int limit = remaining == null ? size : Math.min(size, remaining);
+
+			FetchOptions fetch = FetchOptions.Builder.withLimit(limit)
+				.chunkSize(limit)
+				.prefetchSize(limit)
+				.offset(offset + ahead * size);
+			if (base != null)
+			{
+				fetch.startCursor(base);
+			}
+			if (options != null && options.getEndCursor() != null)
+			{
+				fetch.endCursor(options.getEndCursor());
+			}
+
+			QueryResultIterator<Entity> started = datastore.serviceAsyncPrepare(query, settings).asQueryResultIterator(fetch);
+			pending.add(new RetriedQueryIterator(datastore, query, settings, fetch, started));
+
+			ahead++;
+			if (remaining != null)
+			{
+				remaining -= limit;
+			}
+		}
+	}
+
+	@Override
+	protected Entity computeNext()
+	{
+		while (current == null || !current.hasNext())
+		{
+			if (current != null)
+			{
+				// a short chunk means there are no more results
+				if (taken < size)
+				{
+					exhausted = true;
+					pending.clear();
+				}
+				else
+				{
+					// later chunks are positioned from the end of this one
+					base = current.getCursor();
+					offset = 0;
+					ahead--;
+				}
+			}
+
+			if (pending.isEmpty())
+			{
+				fill();
+				if (pending.isEmpty())
+				{
+					return endOfData();
+				}
+			}
+
+			current = pending.remove();
+			taken = 0;
+
+			// keep the pipeline full while this chunk is used
+			fill();
+		}
+
+		taken++;
+		return current.next();
+	}
+
+	public Cursor getCursor()
+	{
+		if (current == null)
+		{
+			return base;
+		}
+		return current.getCursor();
+	}
+
+	public List<Index> getIndexList()
+	{
+		return current == null ? null : current.getIndexList();
+	}
+}
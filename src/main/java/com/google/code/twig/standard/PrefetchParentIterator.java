@@ -4,19 +4,30 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Future;
 
 import com.google.appengine.api.datastore.Entity;
 import com.google.appengine.api.datastore.Key;
+import com.google.code.twig.util.FutureResults;
 import com.google.common.base.Function;
 import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.Iterators;
 
+/**
+ * Gets the parents of child entities in chunks. The bulk get of the next
+ * chunk is started before the current chunk is returned so the datastore 
+ * works while the parents are being used.
+ */
 class PrefetchParentIterator extends AbstractIterator<Entity>
 {
 	private final Iterator<Entity> children;
 	private Iterator<Entity> parents;
 	private final int fetchBy;
 	private final TranslatorObjectDatastore datastore;
+	
+	// the keys and started get of the chunk after the current one
+	private List<Key> nextKeys;
+	private Future<Map<Key, Entity>> nextEntities;
 
 	PrefetchParentIterator(Iterator<Entity> children, TranslatorObjectDatastore datastore, int fetchBy)
 	{
@@ -30,20 +41,24 @@ class PrefetchParentIterator extends AbstractIterator<Entity>
 	{
 		if (parents == null)
 		{
-			if (!children.hasNext())
+			if (nextKeys == null)
 			{
-				return endOfData();
+				startNextChunk();
 			}
-
-			// match the key iterator chunk size
-			List<Key> keys = new ArrayList<Key>(fetchBy);
-			for (int i = 0; i < fetchBy && children.hasNext(); i++)
+			
+			if (nextKeys.isEmpty())
 			{
-				keys.add(children.next().getKey().getParent());
+				return endOfData();
 			}
 
-			// do a bulk get of the keys
-			final Map<Key, Entity> keyToEntity = keysToEntities(keys);
+			List<Key> keys = nextKeys;
+			Future<Map<Key, Entity>> entities = nextEntities;
+			
+			// start getting the following chunk before we wait for this one
+			startNextChunk();
+
+			// wait for the bulk get of the keys
+			final Map<Key, Entity> keyToEntity = resolve(entities);
 
 			// keep the order of the original keys
 			parents = Iterators.transform(keys.iterator(), new Function<Key, Entity>()
@@ -53,11 +68,6 @@ class PrefetchParentIterator extends AbstractIterator<Entity>
 					return keyToEntity.get(from);
 				}
 			});
-
-			if (parents.hasNext() == false)
-			{
-				return endOfData();
-			}
 		}
 
 		if (parents.hasNext())
@@ -71,8 +81,43 @@ class PrefetchParentIterator extends AbstractIterator<Entity>
 		}
 	}
 
-	protected Map<Key, Entity> keysToEntities(List<Key> keys)
+	/**
+	 * Start getting the first chunk of parents before they are iterated
+	 */
+	void start()
+	{
+		if (nextKeys == null && parents == null)
+		{
+			startNextChunk();
+		}
+	}
+
+	private void startNextChunk()
+	{
+		// match the key iterator chunk size
+		nextKeys = new ArrayList<Key>(fetchBy);
+		for (int i = 0; i < fetchBy && children.hasNext(); i++)
+		{
+			nextKeys.add(children.next().getKey().getParent());
+		}
+		
+		if (nextKeys.isEmpty())
+		{
+			nextEntities = null;
+		}
+		else
+		{
+			nextEntities = keysToEntitiesLater(nextKeys);
+		}
+	}
+
+	protected Future<Map<Key, Entity>> keysToEntitiesLater(List<Key> keys)
+	{
+		return datastore.serviceGetLater(keys, datastore.getDefaultSettings());
+	}
+
+	static Map<Key, Entity> resolve(Future<Map<Key, Entity>> entities)
 	{
-		return datastore.serviceGet(keys, datastore.getDefaultSettings());
+		return FutureResults.get(entities);
 	}
-}
\ No newline at end of file
+}
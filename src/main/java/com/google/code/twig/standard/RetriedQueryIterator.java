@@ -0,0 +1,105 @@
+package com.google.code.twig.standard;
+
+import java.util.List;
+
+import com.google.appengine.api.datastore.Cursor;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Index;
+import com.google.appengine.api.datastore.PreparedQuery;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.QueryResultIterator;
+import com.google.code.twig.Settings;
+import com.google.code.twig.standard.BaseObjectDatastore.Attempt;
+import com.google.common.collect.ForwardingIterator;
+
+/**
+ * Results of a query that was started asynchronously. If the first batch
+ * fails when it is waited for the query is run again with the retry policy.
+ * Later batches are not retried because the position in the results would
+ * be lost.
+ */
+class RetriedQueryIterator extends ForwardingIterator<Entity> implements QueryResultIterator<Entity>
+{
+	private final TranslatorObjectDatastore datastore;
+	private final Query query;
+	private final Settings settings;
+	private final FetchOptions options;
+	private QueryResultIterator<Entity> delegate;
+	private boolean waited;
+
+	/**
+	 * @param started The results of the query started with the async service
+	 */
+	RetriedQueryIterator(TranslatorObjectDatastore datastore, Query query, Settings settings, FetchOptions options, QueryResultIterator<Entity> started)
+	{
+		this.datastore = datastore;
+		this.query = query;
+		this.settings = settings;
+		this.options = options;
+		this.delegate = started;
+	}
+
+	/**
+	 * Runs the query and waits for the first batch so a failure can be retried
+	 */
+	static Attempt<QueryResultIterator<Entity>> firstBatch(final TranslatorObjectDatastore datastore, final Query query, final FetchOptions options)
+	{
+		return new Attempt<QueryResultIterator<Entity>>()
+		{
+			@Override
+			QueryResultIterator<Entity> call(Settings settings)
+			{
+				QueryResultIterator<Entity> entities = asQueryResultIterator(datastore.servicePrepare(query, settings), options);
+				entities.hasNext();
+				return entities;
+			}
+		};
+	}
+
+	/**
+	 * @param options The fetch options or null to use the defaults
+	 */
+	static QueryResultIterator<Entity> asQueryResultIterator(PreparedQuery prepared, FetchOptions options)
+	{
+		if (options == null)
+		{
+			return prepared.asQueryResultIterator();
+		}
+		else
+		{
+			return prepared.asQueryResultIterator(options);
+		}
+	}
+
+	@Override
+	protected QueryResultIterator<Entity> delegate()
+	{
+		if (!waited)
+		{
+			waited = true;
+			try
+			{
+				delegate.hasNext();
+			}
+			catch (RuntimeException e)
+			{
+				// the async query was the first try
+				delegate = datastore.retry(settings, firstBatch(datastore, query, options), 1, e);
+			}
+		}
+		return delegate;
+	}
+
+	@Override
+	public Cursor getCursor()
+	{
+		return delegate().getCursor();
+	}
+
+	@Override
+	public List<Index> getIndexList()
+	{
+		return delegate().getIndexList();
+	}
+}
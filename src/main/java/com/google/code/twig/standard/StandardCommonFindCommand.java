@@ -317,6 +317,19 @@ abstract class StandardCommonFindCommand<C extends StandardCommonFindCommand<C>>
   }
 
 	protected QueryResultIterator<Entity> nowSingleQueryEntities(Query query)
+	{
+		return singleQueryEntities(query, false);
+	}
+
+	/**
+	 * Starts the query without waiting for its results unless they are remembered
+	 */
+	protected QueryResultIterator<Entity> laterSingleQueryEntities(Query query)
+	{
+		return singleQueryEntities(query, true);
+	}
+
+	protected final QueryResultIterator<Entity> singleQueryEntities(final Query query, boolean async)
 	{
 		// TODO move this into what is now BaseObjectDatastore
 		final boolean caching = remember && datastore.getTransaction() == null;
@@ -349,15 +362,29 @@ abstract class StandardCommonFindCommand<C extends StandardCommonFindCommand<C>>
 		}
 
 		QueryResultIterator<Entity> entities;
-		PreparedQuery prepared = this.datastore.servicePrepare(query, getSettings());
 		FetchOptions fetchOptions = getRootCommand().getFetchOptions();
-		if (fetchOptions == null)
+		int pipeline = getRootCommand().getPipeline();
+		if (pipeline > 0)
 		{
-			entities = prepared.asQueryResultIterator();
+			// the pipeline always starts its chunks asynchronously
+			@SuppressWarnings("deprecation")
+			int size = FetchOptions.DEFAULT_CHUNK_SIZE;
+			if (fetchOptions != null && fetchOptions.getChunkSize() != null)
+			{
+				size = fetchOptions.getChunkSize();
+			}
+			entities = new PipelinedQueryIterator(datastore, query, getSettings(), fetchOptions, size, pipeline);
+		}
+		else if (async)
+		{
+			// the first batch is retried if it fails when it is waited for
+			PreparedQuery prepared = this.datastore.serviceAsyncPrepare(query, getSettings());
+			entities = new RetriedQueryIterator(datastore, query, getSettings(), fetchOptions, RetriedQueryIterator.asQueryResultIterator(prepared, fetchOptions));
 		}
 		else
 		{
-			entities = prepared.asQueryResultIterator(fetchOptions);
+			// the first batch is fetched now so it can be retried
+			entities = datastore.retry(getSettings(), RetriedQueryIterator.firstBatch(datastore, query, fetchOptions));
 		}
 		datastore.statistics.queries++;
 
@@ -396,93 +423,49 @@ abstract class StandardCommonFindCommand<C extends StandardCommonFindCommand<C>>
 
 	protected Iterator<Entity> nowMultipleQueryEntities(Collection<Query> queries)
 	{
-		List<Iterator<Entity>> iterators = new ArrayList<Iterator<Entity>>(queries.size());
+		List<QueryResultIterator<Entity>> iterators = laterMultipleQueryEntities(queries);
+		
+		// wait for the first batches which are all fetched at the same time
+		for (QueryResultIterator<Entity> entities : iterators)
+		{
+			entities.hasNext();
+		}
+		
+		return mergeQueryEntities(queries, iterators);
+	}
+
+	/**
+	 * Starts all queries at once so the time taken is that of the slowest 
+	 * query rather than the sum of them all
+	 */
+	protected List<QueryResultIterator<Entity>> laterMultipleQueryEntities(Collection<Query> queries)
+	{
+		List<QueryResultIterator<Entity>> iterators = new ArrayList<QueryResultIterator<Entity>>(queries.size());
 		for (Query query : queries)
 		{
-			Iterator<Entity> entities = nowSingleQueryEntities(query);
-			entities = applyEntityFilter(entities);
-			iterators.add(entities);
+			iterators.add(laterSingleQueryEntities(query));
+		}
+		return iterators;
+	}
+
+	/**
+	 * @param iterators The results of each query in the same order
+	 */
+	protected Iterator<Entity> mergeQueryEntities(Collection<Query> queries, List<? extends Iterator<Entity>> iterators)
+	{
+		List<Iterator<Entity>> filtered = new ArrayList<Iterator<Entity>>(iterators.size());
+		for (Iterator<Entity> entities : iterators)
+		{
+			filtered.add(applyEntityFilter(entities));
 		}
 
 		// all queries have the same sorts
 		Query query = queries.iterator().next();
 		List<SortPredicate> sorts = query.getSortPredicates();
-		Iterator<Entity> merged = mergeEntities(iterators, sorts);
+		Iterator<Entity> merged = mergeEntities(filtered, sorts);
 		return merged;
 	}
 
-//	private Future<Iterator<Entity>> futureEntityIteratorsToFutureMergedIterator(
-//			final List<Future<QueryResultIterator<Entity>>> futures, final List<SortPredicate> sorts)
-//	{
-//		return new Future<Iterator<Entity>>()
-//		{
-//
-//			public boolean cancel(boolean mayInterruptIfRunning)
-//			{
-//				boolean success = true;
-//				for (Future<QueryResultIterator<Entity>> future : futures)
-//				{
-//					if (future.cancel(mayInterruptIfRunning) == false)
-//					{
-//						success = false;
-//					}
-//				}
-//				return success;
-//			}
-//
-//			public Iterator<Entity> get() throws InterruptedException, ExecutionException
-//			{
-//				return futureQueriesToEntities(futures);
-//			}
-//
-//			public Iterator<Entity> get(long timeout, TimeUnit unit) throws InterruptedException,
-//					ExecutionException, TimeoutException
-//			{
-//				return futureQueriesToEntities(futures);
-//			}
-//
-//			private Iterator<Entity> futureQueriesToEntities(
-//					List<Future<QueryResultIterator<Entity>>> futures)
-//					throws InterruptedException, ExecutionException
-//			{
-//				List<Iterator<Entity>> iterators = new ArrayList<Iterator<Entity>>(futures.size());
-//				for (Future<QueryResultIterator<Entity>> future : futures)
-//				{
-//					Iterator<Entity> entities = future.get();
-//					entities = applyEntityFilter(entities);
-//					iterators.add(entities);
-//				}
-//				return mergeEntities(iterators, sorts);
-//			}
-//
-//			public boolean isCancelled()
-//			{
-//				// only if all are canceled
-//				for (Future<QueryResultIterator<Entity>> future : futures)
-//				{
-//					if (!future.isCancelled())
-//					{
-//						return false;
-//					}
-//				}
-//				return true;
-//			}
-//
-//			public boolean isDone()
-//			{
-//				// only if all are done
-//				for (Future<QueryResultIterator<Entity>> future : futures)
-//				{
-//					if (!future.isDone())
-//					{
-//						return false;
-//					}
-//				}
-//				return true;
-//			}
-//		};
-//	}
-
 //	private final class KeyToInstanceFunction<T> implements Function<Entity, T>
 //	{
 //		private final Predicate<String> propertyPredicate;
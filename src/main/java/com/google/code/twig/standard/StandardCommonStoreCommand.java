@@ -15,7 +15,6 @@ import java.util.concurrent.Future;
 import com.google.appengine.api.datastore.AsyncDatastoreService;
 import com.google.appengine.api.datastore.DatastoreServiceFactory;
 import com.google.appengine.api.datastore.Entity;
-import com.google.appengine.api.datastore.EntityNotFoundException;
 import com.google.appengine.api.datastore.Key;
 import com.google.appengine.api.datastore.KeyFactory;
 import com.google.appengine.api.datastore.Transaction;
@@ -24,8 +23,10 @@ import com.google.code.twig.Path;
 import com.google.code.twig.Property;
 import com.google.code.twig.PropertyTranslator;
 import com.google.code.twig.StoreCommand.CommonStoreCommand;
+import com.google.code.twig.standard.TranslatorObjectDatastore.ObjectFieldTranslator;
 import com.google.code.twig.util.reference.ObjectReference;
 import com.google.code.twig.util.reference.SimpleObjectReference;
+import com.google.common.base.Joiner;
 import com.google.common.base.Predicates;
 import com.google.common.collect.Collections2;
 import com.google.common.primitives.Primitives;
@@ -194,11 +195,119 @@ abstract class StandardCommonStoreCommand<T, C extends StandardCommonStoreComman
 			// put null if instance was already stored - don't store again
 			entities.put(instance, entity);
 		}
+		
+		if (!datastore.associating)
+		{
+			versionEntities(entities);
+		}
 
 		// if we are batching this will contain all referenced entities
 		return entities;
 	}
 
+	/**
+	 * Checks the versions of all versioned instances that were not loaded in
+	 * this session with a single bulk get and then increments every version
+	 * and sets it on the entity.
+	 */
+	final void versionEntities(Map<?, Entity> entities)
+	{
+		// instances may define equals so keep them in parallel lists
+		List<Object> instances = new ArrayList<Object>();
+		List<Entity> versioned = new ArrayList<Entity>();
+		List<String> names = new ArrayList<String>();
+		List<Key> unchecked = new ArrayList<Key>();
+		for (Map.Entry<?, Entity> entry : entities.entrySet())
+		{
+			// already stored instances have no entity
+			Entity entity = entry.getValue();
+			if (entity == null)
+			{
+				continue;
+			}
+			
+			// if we have a version name then instance is versioned
+			Object instance = entry.getKey();
+			String versionPropertyName = datastore.getConfiguration().versionPropertyName(instance.getClass());
+			if (command.versionPropertyName != null)
+			{
+				versionPropertyName = command.versionPropertyName;
+			}
+			
+			if (versionPropertyName != null)
+			{
+				instances.add(instance);
+				versioned.add(entity);
+				names.add(versionPropertyName);
+				
+				// if version is positive it was loaded in this session
+				if (datastore.version(instance) < 0)
+				{
+					unchecked.add(entity.getKey());
+				}
+			}
+		}
+
+		if (!unchecked.isEmpty())
+		{
+			// load existing entities to get their current versions
+			Map<Key, Entity> existing = datastore.serviceGet(unchecked, datastore.getDefaultSettings());
+			
+			List<Key> missing = new ArrayList<Key>();
+			List<String> conflicts = new ArrayList<String>();
+			for (int i = 0; i < instances.size(); i++)
+			{
+				long local = datastore.version(instances.get(i));
+				if (local >= 0)
+				{
+					continue;
+				}
+				
+				Key key = versioned.get(i).getKey();
+				Entity current = existing.get(key);
+				if (current == null)
+				{
+					missing.add(key);
+					continue;
+				}
+				
+				Long version = version(current, instances.get(i).getClass());
+				if (version == null)
+				{
+					// allow unversioned types to become versioned
+					version = 1l;
+				}
+
+				if (-local != version)
+				{
+					conflicts.add(version + ":" + -local + " " + key);
+				}
+			}
+			
+			// report all failures together before anything is changed
+			if (!missing.isEmpty())
+			{
+				throw new IllegalArgumentException("Update missing entity " + Joiner.on(", ").join(missing));
+			}
+			if (!conflicts.isEmpty())
+			{
+				throw new IllegalStateException("Versions not equal " + Joiner.on(", ").join(conflicts));
+			}
+		}
+		
+		for (int i = 0; i < instances.size(); i++)
+		{
+			// change to positive to indicate we checked it in this session
+			long local = Math.abs(datastore.version(instances.get(i)));
+			
+			// increment the version locally
+			datastore.keyCache.setVersion(instances.get(i), ++local);
+
+			// add the version property to store with entity
+			versioned.get(i).setProperty(names.get(i), local);
+		}
+	}
+
 	protected Map<T, Key> createKeyMapAndUpdateKeyCache(Map<T, Entity> entities, List<Key> keys)
 	{
 		// build a map of instance to key
@@ -259,52 +368,7 @@ abstract class StandardCommonStoreCommand<T, C extends StandardCommonStoreComman
 		{
 			// not associating so must be updating or storing
 			
-			// if we have a version name then instance is versioned
-			String versionPropertyName = datastore.getConfiguration().versionPropertyName(instance.getClass());
-			if (command.versionPropertyName != null)
-			{
-				versionPropertyName = command.versionPropertyName;
-			}
-			
-			if (versionPropertyName != null)
-			{
-				try
-				{
-					// get current version
-					long local = datastore.version(instance);
-
-					// if version is positive it was loaded in this session
-					if (local < 0)
-					{
-						// change to positive to indicate we checked it in this session
-						local = -local;
-						
-						// load existing entity to get current version
-						Entity existing = datastore.serviceGet(entity.getKey(), datastore.getDefaultSettings());
-						Long version = version(existing, instance.getClass());
-						if (version == null)
-						{
-							// allow unversioned types to become versioned
-							version = 1l;
-						}
-
-						if (local != version)
-						{
-							throw new IllegalStateException("Versions not equal " + version + ":" + local);
-						}
-					}
-					
-					// increment the version locally
-					datastore.keyCache.setVersion(instance, ++local);
-
-					// add the version property to store with entity
-					entity.setProperty(versionPropertyName, local);
-				}
-				catch (EntityNotFoundException e)
-				{
-					throw new IllegalArgumentException("Update missing entity " + entity.getKey());
-				}
-			}
+			versionEntities(Collections.singletonMap(instance, entity));
 
 			// TODO allow command to override settings
 			key = datastore.servicePut(entity, datastore.getDefaultSettings());
@@ -379,19 +443,41 @@ abstract class StandardCommonStoreCommand<T, C extends StandardCommonStoreComman
 			}
 		}
 
-		// translate fields to properties - sets key ancestors and id
+		Entity entity;
 		PropertyTranslator encoder = datastore.encoder(instance);
-		Set<Property> properties = encoder.encode(instance, Path.EMPTY_PATH, false);
-		if (properties == null)
+		DirectEntityCodec direct = datastore.getDirectCodec();
+		if (direct != null && encoder == datastore.getFieldTranslator())
 		{
-			throw new IllegalStateException("Could not translate instance: " + instance);
+			// write native values straight to the entity
+			entity = direct.encode(instance, this);
 		}
+		else
+		{
+			EntitySink sink;
+			if (encoder == datastore.getFieldTranslator())
+			{
+				// translate fields straight into the sink - sets key ancestors and id
+				sink = new EntitySink(datastore.model(instance.getClass()).getStoredFieldModels().length);
+				((ObjectFieldTranslator) encoder).encode(instance, Path.EMPTY_PATH, false, sink);
+			}
+			else
+			{
+				// translate fields to properties - sets key ancestors and id
+				Set<Property> properties = encoder.encode(instance, Path.EMPTY_PATH, false);
+				if (properties == null)
+				{
+					throw new IllegalStateException("Could not translate instance: " + instance);
+				}
+				sink = new EntitySink(properties.size());
+				sink.properties(properties);
+			}
 
-		// the key will now be set with id and ancestors
-		Entity entity = createEntity();
+			// the key will now be set with id and ancestors
+			entity = createEntity();
 
-		// will trigger referenced instances to be stored
-		transferProperties(entity, properties);
+			// will trigger referenced instances to be stored
+			sink.fill(entity, this);
+		}
 
 		// pop the encode context
 		datastore.encodeKeyDetails = existingEncodeKeySpec;
@@ -411,46 +497,26 @@ abstract class StandardCommonStoreCommand<T, C extends StandardCommonStoreComman
 
 	private void maybeSetAllocatedId(Object instance)
 	{
-		Key parentKey;
 		long allocateIdsForType = datastore.getConfiguration().allocateIdsFor(instance.getClass());
 		if (allocateIdsForType > 0)
 		{
 			if (datastore.encodeKeyDetails.getId() == null)
 			{
-				parentKey = null;
+				Key parentKey = null;
 				ObjectReference<Key> parentKeyReference = datastore.encodeKeyDetails.getParentKeyReference();
-				StringBuilder kindAndParentBuilder = new StringBuilder();
-				kindAndParentBuilder.append(datastore.encodeKeyDetails.getKind());
 				if (parentKeyReference != null)
 				{
 					parentKey = parentKeyReference.get();
-					kindAndParentBuilder.append(parentKey.toString());
-				}
-
-				String kindAndParent = kindAndParentBuilder.toString();
-				Iterator<Key> range = null;
-				if (datastore.allocatedIdRanges == null)
-				{
-					datastore.allocatedIdRanges = new HashMap<String, Iterator<Key>>();
-				}
-				else
-				{
-					range = datastore.allocatedIdRanges.get(kindAndParent);
 				}
 
-				if (range == null || range.hasNext() == false)
-				{
-					range = datastore.getDefaultService().allocateIds(
-									parentKey,
-									datastore.encodeKeyDetails.getKind(),
-									allocateIdsForType)
-									.iterator();
-
-					datastore.allocatedIdRanges.put(kindAndParent, range);
-				}
+				// ids come from a block shared with other datastores which is refilled in the background
+				long id = AllocatedIdPool.nextId(
+						datastore.asyncService(null),
+						parentKey,
+						datastore.encodeKeyDetails.getKind(),
+						allocateIdsForType);
 
-				// get the id from the key - the rest of the key spec should be the same
-				datastore.encodeKeyDetails.setId(range.next().getId());
+				datastore.encodeKeyDetails.setId(id);
 			}
 		}
 	}
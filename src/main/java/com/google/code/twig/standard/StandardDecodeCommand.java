@@ -2,12 +2,14 @@ package com.google.code.twig.standard;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.TreeSet;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
 import com.google.appengine.api.datastore.Entity;
@@ -20,9 +22,11 @@ import com.google.code.twig.Property;
 import com.google.code.twig.PropertyTranslator;
 import com.google.code.twig.Restriction;
 import com.google.code.twig.Settings;
+import com.google.code.twig.standard.TranslatorObjectDatastore.ObjectFieldTranslator;
+import com.google.code.twig.util.DeferredFuture;
+import com.google.code.twig.util.ImmediateFuture;
 import com.google.code.twig.util.PropertySets;
-import com.google.code.twig.util.RestrictionToPredicateAdaptor;
-import com.google.common.collect.Sets;
+import com.google.common.collect.AbstractIterator;
 
 @SuppressWarnings("unchecked")
 class StandardDecodeCommand<C extends StandardDecodeCommand<C>> extends StandardCommand
@@ -33,6 +37,7 @@ class StandardDecodeCommand<C extends StandardDecodeCommand<C>> extends Standard
 	protected Restriction<Entity> entityRestriction;
 	protected Restriction<Property> propertyRestriction;
 	protected Settings.Builder builder;
+	protected int prefetchRelations;
 	private boolean refresh;
 	
 	StandardDecodeCommand(TranslatorObjectDatastore datastore, int initialActivationDepth)
@@ -59,6 +64,12 @@ class StandardDecodeCommand<C extends StandardDecodeCommand<C>> extends Standard
 		return (C) this;
 	}
 	
+	public C prefetchRelations(int chunk)
+	{
+		this.prefetchRelations = chunk;
+		return (C) this;
+	}
+	
 	public C cache(CacheMode cacheMode)
 	{
 		this.builder.cacheMode(cacheMode);
@@ -99,21 +110,30 @@ class StandardDecodeCommand<C extends StandardDecodeCommand<C>> extends Standard
 		
 		Class<?> type = datastore.getConfiguration().kindToType(entity.getKind());
 
-		Set<Property> properties = PropertySets.create(entity.getProperties(), false);
-		
-		// filter out unwanted properties at this low level
-		if (restriction != null)
+		PropertyTranslator decoder = datastore.decoder(entity);
+		DirectEntityCodec direct = datastore.getDirectCodec();
+		if (direct != null && restriction == null && !datastore.denormalising
+				&& decoder == datastore.getFieldTranslator())
 		{
-			properties = Sets.filter(properties, new RestrictionToPredicateAdaptor<Property>(restriction));
+			// read native values straight from the entity
+			instance = direct.decode(entity, type, this);
+		}
+		else
+		{
+			// filter out unwanted properties at this low level and order them 
+			// once for efficient separation by field
+			Set<Property> properties = PropertySets.sorted(entity.getProperties(), false, restriction);
+	
+			if (decoder == datastore.getFieldTranslator())
+			{
+				// decode by the property layout learned from this kind
+				instance = ((ObjectFieldTranslator) decoder).decodeEntity(entity.getKind(), properties, type);
+			}
+			else
+			{
+				instance = decoder.decode(properties, Path.EMPTY_PATH, type);
+			}
 		}
-
-		// order the properties for efficient separation by field
-		Set<Property> sorted = new TreeSet<Property>();
-		sorted.addAll(properties);
-		properties = sorted;
-
-		PropertyTranslator decoder = datastore.decoder(entity);
-		instance = decoder.decode(properties, Path.EMPTY_PATH, type);
 		
 		// pop the decode context after decode
 		datastore.decodeKey = existingDecodeKey;
@@ -149,6 +169,12 @@ class StandardDecodeCommand<C extends StandardDecodeCommand<C>> extends Standard
 
 	public final <T> Iterator<T> entitiesToInstances(final Iterator<Entity> entities, final Restriction<Property> filter)
 	{
+		// restricted properties might exclude the relations
+		if (prefetchRelations > 0 && filter == null)
+		{
+			return prefetchedEntitiesToInstances(entities);
+		}
+		
 		return new Iterator<T>()
 		{
 			@Override
@@ -173,6 +199,157 @@ class StandardDecodeCommand<C extends StandardDecodeCommand<C>> extends Standard
 		};
 	}
 
+	private <T> Iterator<T> prefetchedEntitiesToInstances(final Iterator<Entity> entities)
+	{
+		return new AbstractIterator<T>()
+		{
+			private Iterator<Entity> chunk = Collections.<Entity>emptyList().iterator();
+			private Map<Key, Entity> prefetched;
+			
+			@Override
+			protected T computeNext()
+			{
+				if (!chunk.hasNext())
+				{
+					if (!entities.hasNext())
+					{
+						return endOfData();
+					}
+					
+					List<Entity> next = new ArrayList<Entity>(prefetchRelations);
+					while (next.size() < prefetchRelations && entities.hasNext())
+					{
+						next.add(entities.next());
+					}
+					prefetched = prefetchRelations(next);
+					chunk = next.iterator();
+				}
+				
+				// relation translators find their entities here instead of getting them
+				Map<Key, Entity> existing = datastore.prefetched;
+				datastore.prefetched = prefetched;
+				try
+				{
+					datastore.command = StandardDecodeCommand.this;
+					return (T) entityToInstance(chunk.next(), null);
+				}
+				finally
+				{
+					datastore.prefetched = existing;
+				}
+			}
+		};
+	}
+
+	/**
+	 * Gets the entities referenced by relation fields of these entities and
+	 * then the entities they reference with one bulk get per activation level.
+	 * 
+	 * @return The referenced entities by key
+	 */
+	private Map<Key, Entity> prefetchRelations(List<Entity> entities)
+	{
+		Map<Key, Entity> result = new HashMap<Key, Entity>();
+		
+		// the depth each entity of the level will be decoded at
+		Map<Entity, Integer> level = new IdentityHashMap<Entity, Integer>(entities.size());
+		for (Entity entity : entities)
+		{
+			level.put(entity, depth);
+		}
+		
+		while (!level.isEmpty())
+		{
+			Map<Key, Integer> keys = new HashMap<Key, Integer>();
+			for (Map.Entry<Entity, Integer> entry : level.entrySet())
+			{
+				relationKeys(entry.getKey(), entry.getValue(), keys);
+			}
+			
+			// instances already in memory are not loaded again
+			Iterator<Key> iterator = keys.keySet().iterator();
+			while (iterator.hasNext())
+			{
+				Key key = iterator.next();
+				if (result.containsKey(key) || datastore.keyCache.getInstance(key) != null)
+				{
+					iterator.remove();
+				}
+			}
+			
+			if (keys.isEmpty())
+			{
+				break;
+			}
+			
+			Map<Key, Entity> got = datastore.serviceGet(keys.keySet(), getSettings());
+			result.putAll(got);
+			
+			level = new IdentityHashMap<Entity, Integer>(got.size());
+			for (Entity entity : got.values())
+			{
+				level.put(entity, keys.get(entity.getKey()));
+			}
+		}
+		
+		return result;
+	}
+
+	/**
+	 * Adds the keys referenced by relation fields that will be activated
+	 * along with the depth the referenced instance will be decoded at
+	 */
+	private void relationKeys(Entity entity, int depth, Map<Key, Integer> keys)
+	{
+		// only the field translator decodes relations by the class model
+		if (datastore.decoder(entity) != datastore.getFieldTranslator())
+		{
+			return;
+		}
+		
+		Class<?> type = datastore.getConfiguration().kindToType(entity.getKind());
+		for (FieldModel field : datastore.model(type).getStoredFieldModels())
+		{
+			PropertyTranslator translator = datastore.fieldTranslator(field.getField());
+			if (translator instanceof RelationTranslator == false)
+			{
+				continue;
+			}
+			
+			// relations are loaded one level below the field depth
+			int related = field.activationDepth(depth) - 1;
+			if (related < 0)
+			{
+				continue;
+			}
+			
+			Object value;
+			if (translator instanceof ParentRelationTranslator)
+			{
+				value = entity.getKey().getParent();
+			}
+			else
+			{
+				value = entity.getProperty(field.getName());
+			}
+			
+			if (value instanceof Key)
+			{
+				keys.put((Key) value, related);
+			}
+			else if (value instanceof Collection<?>)
+			{
+				for (Object item : (Collection<?>) value)
+				{
+					if (item instanceof Key)
+					{
+						keys.put((Key) item, related);
+					}
+				}
+			}
+		}
+	}
+
 	// get from key cache or datastore
 	public <T> T keyToInstance(Key key, Restriction<Property> filter)
 	{
@@ -220,33 +397,92 @@ class StandardDecodeCommand<C extends StandardDecodeCommand<C>> extends Standard
 		if (missing != null && !missing.isEmpty())
 		{
 			Map<Key, Entity> entities = keysToEntities(missing);
+			decodeMissing(missing, entities, filter, result);
+		}
+
+		return result;
+	}
+
+	private <T> void decodeMissing(List<Key> missing, Map<Key, Entity> entities, Restriction<Property> filter, Map<Key, T> result)
+	{
+		// must decode in same order as keys - needed for refreshing
+		for (Key key : missing)
+		{
+			Entity entity = entities.get(key);
+
+			if (entity == null) continue;
 			
-			// must decode in same order as keys - needed for refreshing
-			for (Key key : missing)
-			{
-				Entity entity = entities.get(key);
+//			// other instances that reference it will still work
+//			if (datastore.refresh != null)
+//			{
+//				datastore.keyCache.evictKey(key);
+//			}
+			
+			T instance = (T) entityToInstance(entity, filter);
 
-				if (entity == null) continue;
-				
-//				// other instances that reference it will still work
-//				if (datastore.refresh != null)
-//				{
-//					datastore.keyCache.evictKey(key);
-//				}
-				
-				T instance = (T) entityToInstance(entity, filter);
+			result.put(key, instance);
+		}
+	}
 
+	/**
+	 * Starts getting the entities that are not already cached and only decodes
+	 * them when the future is resolved
+	 */
+	public final <T> Future<Map<Key, T>> keysToInstancesLater(Collection<Key> keys, final Restriction<Property> filter)
+	{
+		final Map<Key, T> result = new HashMap<Key, T>(keys.size());
+		final List<Key> missing = new ArrayList<Key>(keys.size());
+		for (Key key : keys)
+		{
+			T instance = (T) datastore.keyCache.getInstance(key);
+
+			// if we are doing a refresh or activate then do load the entity
+			if (instance == null || refresh)
+			{
+				missing.add(key);
+			}
+			else
+			{
 				result.put(key, instance);
 			}
 		}
 
-		return result;
+		if (missing.isEmpty())
+		{
+			return new ImmediateFuture<Map<Key, T>>(result);
+		}
+		
+		final Future<Map<Key, Entity>> entities;
+		if (depth >= 0)
+		{
+			entities = datastore.serviceGetLater(missing, getSettings());
+		}
+		else
+		{
+			entities = new ImmediateFuture<Map<Key, Entity>>(keysToEntities(missing));
+		}
+
+		return new DeferredFuture<Map<Key, T>>()
+		{
+			@Override
+			protected Map<Key, T> compute() throws Exception
+			{
+				datastore.command = StandardDecodeCommand.this;
+				decodeMissing(missing, entities.get(), filter, result);
+				return result;
+			}
+		};
 	}
 
 	final Entity keyToEntity(Key key)
 	{
 		if (depth >= 0)
 		{
+			if (datastore.prefetched != null && datastore.prefetched.containsKey(key))
+			{
+				return datastore.prefetched.get(key);
+			}
+			
 			try
 			{
 				return datastore.serviceGet(key, getSettings());
@@ -268,7 +504,31 @@ class StandardDecodeCommand<C extends StandardDecodeCommand<C>> extends Standard
 		// only load entity if we will activate instance
 		if (depth >= 0)
 		{
-			return datastore.serviceGet(keys, getSettings());
+			if (datastore.prefetched == null)
+			{
+				return datastore.serviceGet(keys, getSettings());
+			}
+			
+			// only get the entities that were not prefetched
+			Map<Key, Entity> result = new HashMap<Key, Entity>(keys.size());
+			List<Key> missing = new ArrayList<Key>(keys.size());
+			for (Key key : keys)
+			{
+				Entity entity = datastore.prefetched.get(key);
+				if (entity == null)
+				{
+					missing.add(key);
+				}
+				else
+				{
+					result.put(key, entity);
+				}
+			}
+			if (!missing.isEmpty())
+			{
+				result.putAll(datastore.serviceGet(missing, getSettings()));
+			}
+			return result;
 		}
 		else
 		{
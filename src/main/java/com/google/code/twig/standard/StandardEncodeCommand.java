@@ -1,11 +1,9 @@
 package com.google.code.twig.standard;
 
-import java.util.Collection;
 import java.util.List;
 
 import com.google.appengine.api.datastore.Entity;
 import com.google.appengine.api.datastore.Key;
-import com.google.code.twig.Property;
 import com.google.code.twig.util.Entities;
 import com.google.code.twig.util.reference.ObjectReference;
 
@@ -32,33 +30,6 @@ public class StandardEncodeCommand extends StandardCommand
 		}
 	}
 
-	final void transferProperties(Entity entity, Collection<Property> properties)
-	{
-		for (Property property : properties)
-		{
-			// dereference object references
-			Object value = property.getValue();
-			
-			try
-			{
-				value = dereferencePropertyValue(value);
-			}
-			catch (Throwable t)
-			{
-				throw new RuntimeException("Problem de-referencing property " + property, t);
-			}
-
-			if (property.isIndexed())
-			{
-				entity.setProperty(property.getPath().toString(), value);
-			}
-			else
-			{
-				entity.setUnindexedProperty(property.getPath().toString(), value);
-			}
-		}
-	}
-
 	final Object dereferencePropertyValue(Object value)
 	{
 		if (value instanceof ObjectReference<?>)
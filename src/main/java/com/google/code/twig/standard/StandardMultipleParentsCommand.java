@@ -7,6 +7,7 @@ import java.util.concurrent.Future;
 
 import com.google.appengine.api.datastore.Entity;
 import com.google.appengine.api.datastore.Query.SortPredicate;
+import com.google.code.twig.util.DeferredFuture;
 
 public class StandardMultipleParentsCommand<P> extends StandardCommonParentsCommand<P>
 {
@@ -21,6 +22,27 @@ public class StandardMultipleParentsCommand<P> extends StandardCommonParentsComm
 	}
 
 	public Iterator<P> now()
+	{
+		return parents(false);
+	}
+	
+	@Override
+	public Future<Iterator<P>> later()
+	{
+		// the child queries are already running so only read their results
+		// when asked and then start the get of the first chunk of parents
+		// before returning - following chunks are got as they are iterated
+		return new DeferredFuture<Iterator<P>>()
+		{
+			@Override
+			protected Iterator<P> compute()
+			{
+				return parents(true);
+			}
+		};
+	}
+
+	private Iterator<P> parents(boolean start)
 	{
 		// keys only child queries cannot be sorted as fields are missing
 		if (childCommand.getRootCommand().isUnactivated())
@@ -39,6 +61,11 @@ public class StandardMultipleParentsCommand<P> extends StandardCommonParentsComm
 				parentEntityIterators.add(parentEntities);
 			}
 			
+			if (start)
+			{
+				supplier.start();
+			}
+			
 			// merge all the ancestors iterators into a single iterator
 			Iterator<Entity> mergedParentEntities = mergeEntities(parentEntityIterators, sorts);
 			
@@ -53,15 +80,13 @@ public class StandardMultipleParentsCommand<P> extends StandardCommonParentsComm
 			
 			// get parents for all children at the same time - no dups so no cache
 			mergedChildEntities = childCommand.applyEntityFilter(mergedChildEntities);
-			Iterator<Entity> parentEntities = new PrefetchParentIterator(mergedChildEntities, datastore, getFetchSize());
-			parentEntities = applyEntityFilter(parentEntities);
+			PrefetchParentIterator prefetch = new PrefetchParentIterator(mergedChildEntities, datastore, getFetchSize());
+			if (start)
+			{
+				prefetch.start();
+			}
+			Iterator<Entity> parentEntities = applyEntityFilter(prefetch);
 			return entitiesToInstances(parentEntities, propertyRestriction);
 		}
 	}
-	
-	@Override
-	public Future<Iterator<P>> later()
-	{
-		throw new UnsupportedOperationException("Not implemented yet. Depends on async bulk get.");
-	}
 }
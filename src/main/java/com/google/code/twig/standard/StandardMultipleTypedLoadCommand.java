@@ -8,6 +8,7 @@ import java.util.concurrent.Future;
 
 import com.google.appengine.api.datastore.Key;
 import com.google.code.twig.LoadCommand.MultipleTypedLoadCommand;
+import com.google.code.twig.util.FutureAdaptor;
 import com.google.common.base.Function;
 import com.google.common.base.Predicates;
 import com.google.common.collect.Maps;
@@ -27,11 +28,27 @@ public class StandardMultipleTypedLoadCommand<T>
 	@Override
 	public Future<Map<Object, T>> later()
 	{
-		throw new UnsupportedOperationException("Not yet implemented");
+		final Map<Object, Key> idsToKeys = idsToKeys();
+		Future<Map<Key, T>> future = this.<T>keysToInstancesLater(idsToKeys.values(), propertyRestriction);
+		return new FutureAdaptor<Map<Key, T>, Map<Object, T>>(future)
+		{
+			@Override
+			protected Map<Object, T> adapt(Map<Key, T> keysToInstances)
+			{
+				return idsToInstances(idsToKeys, keysToInstances);
+			}
+		};
 	}
 
 	@Override
 	public Map<Object, T> now()
+	{
+		Map<Object, Key> idsToKeys = idsToKeys();
+		Map<Key, T> keysToInstances = keysToInstances(idsToKeys.values(), propertyRestriction);
+		return idsToInstances(idsToKeys, keysToInstances);
+	}
+
+	private Map<Object, Key> idsToKeys()
 	{
 		// the stored type of the id can be defined for the id field
 		Field keyField = datastore.idField(command.type);
@@ -41,8 +58,11 @@ public class StandardMultipleTypedLoadCommand<T>
 		{
 			idsToKeys.put(id, idToKey(id, keyField, kind, datastore, parentKey));
 		}
-		final Map<Key, T> keysToInstances = keysToInstances(idsToKeys.values(), propertyRestriction);
-		
+		return idsToKeys;
+	}
+
+	private Map<Object, T> idsToInstances(Map<Object, Key> idsToKeys, final Map<Key, T> keysToInstances)
+	{
 		// result will have same ordering as ids
 		Map<Object, T> result = Maps.transformValues(idsToKeys, new Function<Key, T>()
 		{
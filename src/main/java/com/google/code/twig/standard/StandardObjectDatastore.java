@@ -4,6 +4,7 @@ import java.net.URI;
 import java.net.URL;
 import java.util.Currency;
 import java.util.Locale;
+import java.util.Map;
 import java.util.logging.Logger;
 
 import com.google.code.twig.PropertyTranslator;
@@ -16,6 +17,7 @@ import com.google.code.twig.translator.ChainedTranslator;
 import com.google.code.twig.translator.ConverterTranslator;
 import com.google.code.twig.translator.EnumTranslator;
 import com.google.code.twig.translator.NativeDirectTranslator;
+import com.google.common.collect.MapMaker;
 import com.vercer.convert.ArrayToIterable;
 import com.vercer.convert.ChainedTypeConverter;
 import com.vercer.convert.CollectionTypeConverter;
@@ -42,21 +44,29 @@ public class StandardObjectDatastore extends TranslatorObjectDatastore
 		super(settings, strategy, activation, index, converterRegistry);
 	}
 
+	// the converter chain holds no state so one is shared for each registry
+	private static final Map<ConverterRegistry, TypeConverter> converters = new MapMaker().weakKeys().weakValues().makeMap();
+
 	private TypeConverter converter;
 
   @Override
   public TypeConverter getTypeConverter() {
     if (converter == null) {
+      converter = converters.get(registry);
+      if (converter == null) {
 
-      // these are added for every OD instance
-      ChainedTypeConverter chain = new ChainedTypeConverter();
-      chain.add(registry);
-      chain.add(new CollectionTypeConverter(chain));
-      chain.add(new IterableToArray(chain));
-      chain.add(new ArrayToIterable(chain));
-      chain.add(new IterableToFirstElement());
+        // these are added for every registry
+        ChainedTypeConverter chain = new ChainedTypeConverter();
+        chain.add(registry);
+        chain.add(new CollectionTypeConverter(chain));
+        chain.add(new IterableToArray(chain));
+        chain.add(new ArrayToIterable(chain));
+        chain.add(new IterableToFirstElement());
 
-      converter = chain;
+        // another thread may have added an equivalent chain
+        converters.put(registry, chain);
+        converter = chain;
+      }
     }
     return converter;
   }
@@ -1,9 +1,11 @@
 package com.google.code.twig.standard;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Queue;
 import java.util.concurrent.Future;
 
 import com.google.appengine.api.datastore.Cursor;
@@ -20,16 +22,24 @@ import com.google.code.twig.CommandTerminator;
 import com.google.code.twig.FindCommand.ParentsCommand;
 import com.google.code.twig.FindCommand.RootFindCommand;
 import com.google.code.twig.LoadCommand.CacheMode;
+import com.google.code.twig.Settings;
+import com.google.code.twig.standard.BaseObjectDatastore.Attempt;
+import com.google.code.twig.util.DeferredFuture;
 import com.google.code.twig.util.FutureAdaptor;
 import com.google.code.twig.util.ImmediateFuture;
 import com.google.common.collect.ForwardingIterator;
+import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
 
 public class StandardRootFindCommand<T> extends StandardCommonFindCommand<StandardRootFindCommand<T>>
 		implements RootFindCommand<T>
 {
+	// counting only reads keys so fetch as many as the datastore allows at once
+	private static final int COUNT_CHUNK_SIZE = 1000;
+	
 	private final Class<?> type;
 	private FetchOptions options;
+	private int pipeline;
 	private Object ancestor;
 	List<Sort> sorts;
 
@@ -144,6 +154,13 @@ public class StandardRootFindCommand<T> extends StandardCommonFindCommand<Standa
 		return this;
 	}
 
+	@Override
+	public StandardRootFindCommand<T> pipeline(int chunks)
+	{
+		this.pipeline = chunks;
+		return this;
+	}
+
 	@Override
 	public StandardRootFindCommand<T> startFrom(int offset)
 	{
@@ -175,7 +192,42 @@ public class StandardRootFindCommand<T> extends StandardCommonFindCommand<Standa
 	@Override
 	public Future<QueryResultIterator<T>> later()
 	{
-		return new ImmediateFuture<QueryResultIterator<T>>(now());
+		if (getSettings().getCacheMode() == CacheMode.ON)
+		{
+			throw new IllegalStateException("Cannot cache results with iterator");
+		}
+		
+		// start all queries now but only decode results when they are needed
+		final Collection<Query> queries = getValidatedQueries();
+		if (children == null && queries.size() > 1)
+		{
+			throw new IllegalStateException("Too many queries");
+		}
+		
+		final List<QueryResultIterator<Entity>> started = laterMultipleQueryEntities(queries);
+		
+		return new DeferredFuture<QueryResultIterator<T>>()
+		{
+			@Override
+			protected QueryResultIterator<T> compute()
+			{
+				if (children == null)
+				{
+					QueryResultIterator<Entity> entities = started.get(0);
+					
+					// wait for the first results
+					entities.hasNext();
+					
+					return entitiesToResults(entities);
+				}
+				else
+				{
+					Iterator<Entity> entities = mergeQueryEntities(queries, started);
+					Iterator<T> result = entitiesToInstances(entities, propertyRestriction);
+					return new NoCursorQueryResultIterator<T>(result);
+				}
+			}
+		};
 	}
 
 	@Override
@@ -186,29 +238,90 @@ public class StandardRootFindCommand<T> extends StandardCommonFindCommand<Standa
 			@Override
 			public Integer now()
 			{
-				Collection<Query> queries = getValidatedQueries();
-				if (queries.size() > 1)
-				{
-					throw new IllegalStateException("Too many queries");
-				}
-
-				Query query = queries.iterator().next();
-				PreparedQuery prepared = datastore.servicePrepare(query, getSettings());
-				if (options == null)
-				{
-					options = FetchOptions.Builder.withDefaults();
-				}
-				return prepared.countEntities(options);
+				return datastore.retry(getSettings(), count(countedQuery()));
 			}
 			
 			@Override
 			public Future<Integer> later()
 			{
-				throw new UnsupportedOperationException("Not implemented yet. Depends on async count");
+				// there is no async count so start a keys only query and count the keys
+				final Query query = countedQuery();
+				query.setKeysOnly();
+				PreparedQuery prepared = datastore.serviceAsyncPrepare(query, getSettings());
+				final Iterator<Entity> keys = prepared.asIterator(countOptions());
+				
+				return new DeferredFuture<Integer>()
+				{
+					@Override
+					protected Integer compute()
+					{
+						try
+						{
+							return Iterators.size(keys);
+						}
+						catch (RuntimeException e)
+						{
+							// the async query was the first try so count from the start again
+							return datastore.retry(getSettings(), count(query), 1, e);
+						}
+					}
+				};
 			}
 		};
 		
 	}
+	
+	private Query countedQuery()
+	{
+		Collection<Query> queries = getValidatedQueries();
+		if (queries.size() > 1)
+		{
+			throw new IllegalStateException("Too many queries");
+		}
+		
+		// a new query is created each time so it can be changed
+		return queries.iterator().next();
+	}
+	
+	private Attempt<Integer> count(final Query query)
+	{
+		return new Attempt<Integer>()
+		{
+			@Override
+			Integer call(Settings settings)
+			{
+				return datastore.servicePrepare(query, settings).countEntities(countOptions());
+			}
+		};
+	}
+	
+	/**
+	 * @return The range of the command options with keys fetched in the largest chunks
+	 */
+	private FetchOptions countOptions()
+	{
+		FetchOptions counting = FetchOptions.Builder.withChunkSize(COUNT_CHUNK_SIZE).prefetchSize(COUNT_CHUNK_SIZE);
+		if (options != null)
+		{
+			if (options.getLimit() != null)
+			{
+				counting.limit(options.getLimit());
+			}
+			if (options.getOffset() != null)
+			{
+				counting.offset(options.getOffset());
+			}
+			if (options.getStartCursor() != null)
+			{
+				counting.startCursor(options.getStartCursor());
+			}
+			if (options.getEndCursor() != null)
+			{
+				counting.endCursor(options.getEndCursor());
+			}
+		}
+		return counting;
+	}
 
 	@Override
 	public CommandTerminator<T> returnUnique()
@@ -314,7 +427,7 @@ public class StandardRootFindCommand<T> extends StandardCommonFindCommand<Standa
 			@Override
 			public Future<Iterator<P>> later()
 			{
-				return StandardRootFindCommand.this.<P>parentsCommandNow().later();
+				return StandardRootFindCommand.this.<P>parentsCommand(true).later();
 			}
 		};
 	}
@@ -333,16 +446,21 @@ public class StandardRootFindCommand<T> extends StandardCommonFindCommand<Standa
 			@Override
 			public Future<ParentsCommand<P>> later()
 			{
-				return new ImmediateFuture<ParentsCommand<P>>(now());
+				return parentsCommandLater();
 			}
 		};
 	}
 	public <P> ParentsCommand<P> parentsCommandNow()
+	{
+		return parentsCommand(false);
+	}
+
+	private <P> ParentsCommand<P> parentsCommand(boolean async)
 	{
 		Collection<Query> queries = queries();
 		if (queries.size() == 1)
 		{
-			QueryResultIterator<Entity> childEntities = nowSingleQueryEntities(queries.iterator().next());
+			QueryResultIterator<Entity> childEntities = singleQueryEntities(queries.iterator().next(), async);
 			return new StandardSingleParentsCommand<P>(this, childEntities, datastore.defaultActivationDepth);
 		}
 		else
@@ -352,7 +470,8 @@ public class StandardRootFindCommand<T> extends StandardCommonFindCommand<Standa
 			List<SortPredicate> sortPredicates = null;
 			for (Query query : queries)
 			{
-				Iterator<Entity> entities = nowSingleQueryEntities(query);
+				// run all child queries at the same time
+				Iterator<Entity> entities = laterSingleQueryEntities(query);
 				sortPredicates = query.getSortPredicates();
 				iterators.add(entities);
 			}
@@ -360,9 +479,13 @@ public class StandardRootFindCommand<T> extends StandardCommonFindCommand<Standa
 		}
 	}
 
+	/**
+	 * The child queries are started but their results are not read until the
+	 * parents are requested from the command
+	 */
 	public <P> Future<ParentsCommand<P>> parentsCommandLater()
 	{
-		return new ImmediateFuture<ParentsCommand<P>>(this.<P>parentsCommandNow());
+		return new ImmediateFuture<ParentsCommand<P>>(this.<P>parentsCommand(true));
 	}
 	
 	@Override
@@ -388,11 +511,7 @@ public class StandardRootFindCommand<T> extends StandardCommonFindCommand<Standa
 			Query query = queries.iterator().next();
 
 			QueryResultIterator<Entity> entities = nowSingleQueryEntities(query);
-
-			Iterator<Entity> iterator = applyEntityFilter(entities);
-
-			Iterator<T> instances = entitiesToInstances(iterator, propertyRestriction);
-			return new BasicQueryResultIterator<T>(instances, entities);
+			return entitiesToResults(entities);
 		}
 		else
 		{
@@ -411,6 +530,40 @@ public class StandardRootFindCommand<T> extends StandardCommonFindCommand<Standa
 		}
 	}
 
+	private QueryResultIterator<T> entitiesToResults(final QueryResultIterator<Entity> entities)
+	{
+		Iterator<Entity> iterator = applyEntityFilter(entities);
+
+		if (prefetchRelations > 0)
+		{
+			// entities are read ahead so remember the cursor after each one
+			final Queue<Cursor> cursors = new ArrayDeque<Cursor>();
+			final Iterator<Entity> filtered = iterator;
+			iterator = new ForwardingIterator<Entity>()
+			{
+				@Override
+				protected Iterator<Entity> delegate()
+				{
+					return filtered;
+				}
+				
+				@Override
+				public Entity next()
+				{
+					Entity next = super.next();
+					cursors.add(entities.getCursor());
+					return next;
+				}
+			};
+			
+			Iterator<T> instances = entitiesToInstances(iterator, propertyRestriction);
+			return new BasicQueryResultIterator<T>(instances, entities, cursors);
+		}
+		
+		Iterator<T> instances = entitiesToInstances(iterator, propertyRestriction);
+		return new BasicQueryResultIterator<T>(instances, entities, null);
+	}
+
 	@Override
 	protected Query newQuery()
 	{
@@ -452,6 +605,14 @@ public class StandardRootFindCommand<T> extends StandardCommonFindCommand<Standa
 		return options;
 	}
 
+	/**
+	 * @return The maximum number of chunks to fetch ahead or 0 to fetch on demand
+	 */
+	int getPipeline()
+	{
+		return pipeline;
+	}
+
 	/**
 	 * Takes a normal instance Iterator<V> and makes a QueryResultIterator<V> using a
 	 * low-level QueryResultIterator<Entity> to get the cursor.  
@@ -460,11 +621,20 @@ public class StandardRootFindCommand<T> extends StandardCommonFindCommand<Standa
 	{
 		private final Iterator<V> instances;
 		private final QueryResultIterator<Entity> entities;
+		
+		// cursors after entities that were read ahead of the instances
+		private final Queue<Cursor> cursors;
+		private Cursor cursor;
 
-		public BasicQueryResultIterator(Iterator<V> instances, QueryResultIterator<Entity> entities)
+		public BasicQueryResultIterator(Iterator<V> instances, QueryResultIterator<Entity> entities, Queue<Cursor> cursors)
 		{
 			this.instances = instances;
 			this.entities = entities;
+			this.cursors = cursors;
+			if (cursors != null)
+			{
+				cursor = entities.getCursor();
+			}
 		}
 
 		@Override
@@ -473,9 +643,24 @@ public class StandardRootFindCommand<T> extends StandardCommonFindCommand<Standa
 			return instances;
 		}
 
+		@Override
+		public V next()
+		{
+			V next = super.next();
+			if (cursors != null)
+			{
+				cursor = cursors.remove();
+			}
+			return next;
+		}
+
 		public Cursor getCursor()
 		{
-			return entities.getCursor();
+			if (cursors == null)
+			{
+				return entities.getCursor();
+			}
+			return cursor;
 		}
 
 		@Override
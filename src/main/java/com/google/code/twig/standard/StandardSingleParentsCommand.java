@@ -4,6 +4,7 @@ import java.util.Iterator;
 import java.util.concurrent.Future;
 
 import com.google.appengine.api.datastore.Entity;
+import com.google.code.twig.util.DeferredFuture;
 
 public class StandardSingleParentsCommand<P> extends StandardCommonParentsCommand<P>
 {
@@ -18,16 +19,35 @@ public class StandardSingleParentsCommand<P> extends StandardCommonParentsComman
 	@Override
 	public Iterator<P> now()
 	{
-		// no need to cache entities because there are no duplicates
-		Iterator<Entity> filtered = childCommand.applyEntityFilter(childEntities);
-		Iterator<Entity> parentEntities = new PrefetchParentIterator(filtered, datastore, getFetchSize());
-		parentEntities = applyEntityFilter(parentEntities);
-		return childCommand.entitiesToInstances(parentEntities, propertyRestriction);
+		return parents(false);
 	}
 
 	@Override
 	public Future<Iterator<P>> later()
 	{
-		throw new UnsupportedOperationException("Not yet implemented. Depends on async bulk get.");
+		// the child queries are already running so only read their results
+		// when asked and then start the get of the first chunk of parents
+		// before returning - following chunks are got as they are iterated
+		return new DeferredFuture<Iterator<P>>()
+		{
+			@Override
+			protected Iterator<P> compute()
+			{
+				return parents(true);
+			}
+		};
+	}
+
+	private Iterator<P> parents(boolean start)
+	{
+		// no need to cache entities because there are no duplicates
+		Iterator<Entity> filtered = childCommand.applyEntityFilter(childEntities);
+		PrefetchParentIterator prefetch = new PrefetchParentIterator(filtered, datastore, getFetchSize());
+		if (start)
+		{
+			prefetch.start();
+		}
+		Iterator<Entity> parentEntities = applyEntityFilter(prefetch);
+		return childCommand.entitiesToInstances(parentEntities, propertyRestriction);
 	}
 }
@@ -2,6 +2,7 @@ package com.google.code.twig.standard;
 
 import java.util.Collection;
 import java.util.Map;
+import java.util.concurrent.Future;
 
 import com.google.appengine.api.datastore.Key;
 import com.google.code.twig.LoadCommand;
@@ -21,4 +22,9 @@ public class StandardUntypedMultipleLoadCommand extends StandardDecodeCommand<St
 		return keysToInstances(keys, null);
 	}
 
+	public Future<Map<Key, Object>> later()
+	{
+		return keysToInstancesLater(keys, null);
+	}
+
 }
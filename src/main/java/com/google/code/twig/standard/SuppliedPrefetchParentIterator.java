@@ -13,7 +13,6 @@ class SuppliedPrefetchParentIterator extends AbstractIterator<Entity> implements
 {
 	private final Iterator<Entity> children;
 	private final EntitySupplier supplier;
-	private List<Key> ordered = new ArrayList<Key>();
 	private Iterator<Entity> iterator;
 
 	SuppliedPrefetchParentIterator(
@@ -31,9 +30,7 @@ class SuppliedPrefetchParentIterator extends AbstractIterator<Entity> implements
 		if (children.hasNext())
 		{
 			Entity child = children.next();
-			Key parentKey = child.getKey().getParent();
-			ordered.add(parentKey);
-			return parentKey;
+			return child.getKey().getParent();
 		}
 		else
 		{
@@ -42,7 +39,7 @@ class SuppliedPrefetchParentIterator extends AbstractIterator<Entity> implements
 	}
 
 	@Override
-	public void pickup()
+	public void pickup(List<Key> ordered)
 	{
 		List<Entity> parents = new ArrayList<Entity>(ordered.size());
 		for (Key parentKey : ordered)
@@ -51,7 +48,6 @@ class SuppliedPrefetchParentIterator extends AbstractIterator<Entity> implements
 			parents.add(parent);
 		}
 		iterator = parents.iterator();
-		ordered.clear();
 	}
 
 	@Override
@@ -59,7 +55,8 @@ class SuppliedPrefetchParentIterator extends AbstractIterator<Entity> implements
 	{
 		if (iterator == null || !iterator.hasNext())
 		{
-			if (children.hasNext())
+			// parents may already be ordered in the next chunk
+			if (children.hasNext() || supplier.hasPending())
 			{
 				supplier.demand();
 				return computeNext();
@@ -2,11 +2,15 @@ package com.google.code.twig.standard;
 
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
 import java.lang.reflect.Type;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import com.google.appengine.api.datastore.DataTypeUtils;
 import com.google.appengine.api.datastore.Entity;
 import com.google.appengine.api.datastore.FetchOptions;
 import com.google.appengine.api.datastore.Key;
@@ -16,11 +20,13 @@ import com.google.appengine.api.datastore.QueryResultIterator;
 import com.google.appengine.api.datastore.Transaction;
 import com.google.code.twig.LoadCommand.CacheMode;
 import com.google.code.twig.Path;
+import com.google.code.twig.Path.Part;
 import com.google.code.twig.Property;
 import com.google.code.twig.PropertyTranslator;
 import com.google.code.twig.Settings;
 import com.google.code.twig.annotation.Root;
 import com.google.code.twig.configuration.Configuration;
+import com.google.code.twig.standard.FieldModel.Role;
 import com.google.code.twig.conversion.CoreConverters;
 import com.google.code.twig.conversion.EngineConverters;
 import com.google.code.twig.conversion.MapConverters;
@@ -28,15 +34,21 @@ import com.google.code.twig.translator.ChainedTranslator;
 import com.google.code.twig.translator.FieldTranslator;
 import com.google.code.twig.translator.PolymorphicTranslator;
 import com.google.code.twig.util.EntityToKeyFunction;
+import com.google.code.twig.util.FieldAccessor;
+import com.google.code.twig.util.FutureResults;
 import com.google.code.twig.util.Reflection;
+import com.google.code.twig.util.collections.ArraySortedSet;
 import com.google.common.base.Function;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Collections2;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableList.Builder;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.google.common.primitives.Primitives;
 import com.vercer.convert.*;
 
 /**
@@ -53,6 +65,7 @@ public abstract class TranslatorObjectDatastore extends BaseObjectDatastore
 	protected Thread thread;
 
 	// translators are selected for particular fields by the configuration
+	// they read the decode and encode state of this datastore so are not shared
 	private final ObjectFieldTranslator objectFieldTranslator;
 	private final ContainerTranslator containerTranslator;
 	private final ChainedTranslator embedTranslator;
@@ -65,8 +78,12 @@ public abstract class TranslatorObjectDatastore extends BaseObjectDatastore
 	private final PropertyTranslator keyFieldTranslator;
 	private final ChainedTranslator defaultTranslator;
 
-	private static final Map<Class<?>, Field> idFields = new ConcurrentHashMap<Class<?>, Field>();
-	private static final Map<Class<?>, Field> keyFields = new ConcurrentHashMap<Class<?>, Field>();
+	// field configuration shared by all datastores with the same configuration
+	private final ModelCache models;
+
+	// translators are selected once per field by each datastore
+	private final Map<Field, PropertyTranslator> fieldTranslators = new HashMap<Field, PropertyTranslator>();
+
   protected final Map<Key, Object> entitiesInTransaction = new HashMap<Key, Object>();
 
 	/**************State fields********************/
@@ -93,6 +110,9 @@ public abstract class TranslatorObjectDatastore extends BaseObjectDatastore
 	
 	boolean denormalising;
 	
+	// entities of referenced instances got in bulk before decoding a chunk
+	Map<Key, Entity> prefetched;
+	
 	// TODO - this is very fragile! need more reliable way to reference current command
 	// main problem is during iteration of results the last command will change
 	// so it must be reset on every iteration. Also must always remember the current
@@ -102,21 +122,36 @@ public abstract class TranslatorObjectDatastore extends BaseObjectDatastore
 	// allow current command to be manipulated by field annotations
 	public StandardCommand command;
 
-	Map<String, Iterator<Key>> allocatedIdRanges;
-
 	private final Configuration configuration;
 
+	// encode and decode native fields without the translators
+	private DirectEntityCodec directCodec;
+
 	// volatile to allow double checked locking
 	protected volatile ConverterRegistry registry;
 
+	// converters are registered once per datastore class and shared by all instances
+	// without keeping the class or its class loader from being collected
+	private static final ConcurrentMap<Class<?>, ConverterRegistry> staticRegistries = createStaticRegistries();
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static ConcurrentMap<Class<?>, ConverterRegistry> createStaticRegistries()
+	{
+		CacheBuilder cacheBuilder = CacheBuilder.newBuilder();
+		cacheBuilder.weakKeys().softValues();
+		return cacheBuilder.build().asMap();
+	}
+
 	public TranslatorObjectDatastore(Settings settings, Configuration configuration, int activation, boolean index, ConverterRegistry registry)
 	{
 		super(settings);
 		this.configuration = configuration;
 		defaultActivationDepth = activation;
 		defaultIndexFields = index;
+		models = ModelCache.of(configuration, index);
 		if(registry == null){
-			registry = createStaticConverterRegistry();
+			// converters registered with this datastore do not change the shared ones
+			registry = new LayeredConverterRegistry(staticConverterRegistry());
 		}
 		this.registry = registry;
 
@@ -431,7 +466,7 @@ public abstract class TranslatorObjectDatastore extends BaseObjectDatastore
 	 */
 	protected PropertyTranslator decoder(Field field, Set<Property> properties)
 	{
-		return translator(field);
+		return fieldTranslator(field);
 	}
 
 	/**
@@ -442,77 +477,79 @@ public abstract class TranslatorObjectDatastore extends BaseObjectDatastore
 	 */
 	protected PropertyTranslator encoder(Field field, Object instance)
 	{
-		return translator(field);
+		return fieldTranslator(field);
 	}
 
 	/**
+	 * Called once per field by each datastore to select one of its translators
+	 * 
 	 * @param field The current field value being encoded or decoded
 	 * @return The translator for this field
 	 */
 	protected PropertyTranslator translator(Field field)
 	{
+		FieldModel model = model(field);
 		PropertyTranslator result;
-		if (configuration.entity(field))
-		{
-			if (configuration.parent(field))
-			{
-				result = parentTranslator;
-			}
-			else if (configuration.child(field))
-			{
-				result = childTranslator;
-			}
-			else
-			{
-				result = independantTranslator;
-			}
-
-			// should we denormalise some paths
-			String[] paths = configuration.denormalise(field);
-			if (paths != null)
-			{
-				DenormaliseTranslator denormalizer = new DenormaliseTranslator(this, result, Sets.newHashSet(paths));
-				result = new ChainedTranslator(new MapTranslator(this, denormalizer, getTypeConverter()), denormalizer);
-			}
-		}
-		else if (field.isAnnotationPresent(Root.class))
+		switch (model.getRole())
 		{
+		case PARENT:
+			result = parentTranslator;
+			break;
+		case CHILD:
+			result = childTranslator;
+			break;
+		case RELATION:
+			result = independantTranslator;
+			break;
+		case CONTAINER:
 			result = containerTranslator;
-		}
-		else if (configuration.id(field))
-		{
+			break;
+		case ID:
 			result = idFieldTranslator;
-		}
-		else if (configuration.embed(field))
-		{
-			if (configuration.polymorphic(field))
-			{
-				result = polymorphicComponentTranslator;
-			}
-			else
-			{
-				result = embedTranslator;
-			}
-		}
-		else if (configuration.key(field))
-		{
+			break;
+		case POLYMORPHIC:
+			result = polymorphicComponentTranslator;
+			break;
+		case EMBED:
+			result = embedTranslator;
+			break;
+		case KEY:
 			result = keyFieldTranslator;
+			break;
+		default:
+			result = defaultTranslator;
 		}
-		else
+
+		// should we denormalise some paths
+		if (model.getDenormalise() != null)
 		{
-			result = defaultTranslator;
+			DenormaliseTranslator denormalizer = new DenormaliseTranslator(this, result, Sets.newHashSet(model.getDenormalise()));
+			result = new ChainedTranslator(new MapTranslator(this, denormalizer, getTypeConverter()), denormalizer);
 		}
 
 		// if there are too many properties, serialize them 
-		int serializationThreshold = configuration.serializationThreshold(field);
-		if (serializationThreshold >= 0)
+		if (model.getSerializationThreshold() >= 0)
 		{
-			result = new SerializeTranslator(result, serializationThreshold);
+			result = new SerializeTranslator(result, model.getSerializationThreshold());
 		}
 
 		return result;
 	}
 
+	/**
+	 * @return The cached result of {@link #translator(Field)}
+	 */
+	final PropertyTranslator fieldTranslator(Field field)
+	{
+		PropertyTranslator translator = fieldTranslators.get(field);
+		if (translator == null)
+		{
+			translator = translator(field);
+			fieldTranslators.put(field, translator);
+		}
+		return translator;
+	}
+
 	/**
 	 * @return The translator which is used if no others handle the instance
 	 */
@@ -523,6 +560,22 @@ public abstract class TranslatorObjectDatastore extends BaseObjectDatastore
 	 */
 	protected abstract ChainedTranslator createValueTranslatorChain();
 
+	/**
+	 * Encode and decode fields that hold native datastore values straight to
+	 * and from the Entity instead of through the translators. Other fields are
+	 * still handled by their translators. Only used when {@link #encoder(Object)}
+	 * and {@link #decoder(Entity)} are not overridden.
+	 */
+	public void setDirectCodecs(boolean direct)
+	{
+		directCodec = direct ? new DirectEntityCodec(this, objectFieldTranslator, getTypeConverter()) : null;
+	}
+
+	final DirectEntityCodec getDirectCodec()
+	{
+		return directCodec;
+	}
+
 	protected boolean propertiesIndexedByDefault()
 	{
 		return true;
@@ -808,6 +861,25 @@ public abstract class TranslatorObjectDatastore extends BaseObjectDatastore
 		}
 	}
 
+	private ConverterRegistry staticConverterRegistry()
+	{
+		ConverterRegistry result = staticRegistries.get(getClass());
+		if (result == null)
+		{
+			result = createStaticConverterRegistry();
+			ConverterRegistry existing = staticRegistries.putIfAbsent(getClass(), result);
+			if (existing != null)
+			{
+				result = existing;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Called once for each datastore class and the result shared by all its
+	 * instances so must not depend on the state of this instance.
+	 */
 	protected ConverterRegistry createStaticConverterRegistry() {
 		CombinedTypeConverter converter = new CombinedTypeConverter();
 
@@ -909,14 +981,60 @@ public abstract class TranslatorObjectDatastore extends BaseObjectDatastore
 	{
 		Query query = createQuery(type);
 		query.setKeysOnly();
-		FetchOptions options = FetchOptions.Builder.withChunkSize(100);
-		Iterator<Entity> entities = servicePrepare(query, null).asIterator(options);
+		
+		// the async query fetches the next keys while earlier chunks are deleted
+		int chunk = getDefaultSettings().getBatchSize();
+		FetchOptions options = FetchOptions.Builder.withChunkSize(chunk).prefetchSize(chunk);
+		Iterator<Entity> entities = serviceAsyncPrepare(query, null).asIterator(options);
 		Iterator<Key> keys = Iterators.transform(entities, entityToKeyFunction);
-		Iterator<List<Key>> partitioned = Iterators.partition(keys, 100);
+		Iterator<List<Key>> partitioned = Iterators.partition(keys, chunk);
+		
+		// only a limited number of deletes are in progress at once
+		int concurrent = Math.max(1, getDefaultSettings().getConcurrentBatches());
+		Deque<Future<Void>> deleting = new ArrayDeque<Future<Void>>(concurrent);
+		
+		long start = System.currentTimeMillis();
+		long deleted = 0;
 		while (partitioned.hasNext())
 		{
-			deleteKeys(partitioned.next());
+			if (deleting.size() == concurrent)
+			{
+				complete(deleting.remove());
+			}
+			
+			List<Key> next = partitioned.next();
+			deleting.add(deleteKeysLater(next));
+			deleted += next.size();
+			
+			if (log.isLoggable(Level.FINE))
+			{
+				log.fine("Deleting " + deleted + " " + query.getKind() + " " + rate(deleted, start) + "/s");
+			}
+		}
+		
+		while (!deleting.isEmpty())
+		{
+			complete(deleting.remove());
 		}
+		
+		log.info("Deleted " + deleted + " " + query.getKind() + " in " + (System.currentTimeMillis() - start) + "ms " + rate(deleted, start) + "/s");
+	}
+	
+	private static long rate(long count, long start)
+	{
+		return count * 1000 / Math.max(1, System.currentTimeMillis() - start);
+	}
+	
+	private static void complete(Future<Void> future)
+	{
+		FutureResults.get(future);
+	}
+	
+	private Future<Void> deleteKeysLater(Collection<Key> keys)
+	{
+		Future<Void> future = serviceDeleteLater(keys, CacheMode.AUTO);
+		evictKeys(keys);
+		return future;
 	}
 
 	@Override
@@ -924,6 +1042,11 @@ public abstract class TranslatorObjectDatastore extends BaseObjectDatastore
 	{
 		// TODO is auto the right setting here?
 		serviceDelete(keys, CacheMode.AUTO);
+		evictKeys(keys);
+	}
+	
+	private void evictKeys(Collection<Key> keys)
+	{
 		for (Key key : keys)
 		{
 			if (keyCache.containsKey(key))
@@ -944,6 +1067,9 @@ public abstract class TranslatorObjectDatastore extends BaseObjectDatastore
 	private static Map<Class<?>, Collection<Field>> classFields = Maps.newConcurrentMap();
 	private static Map<Class<?>, Constructor<?>> constructors = Maps.newConcurrentMap();
 
+	// entities of one kind usually have one layout or a few after model changes
+	private static final int MAXIMUM_SHAPES_PER_KIND = 4;
+
 	// top level translator that uses the Settings to decide which translator
 	// to use for each Field value.
 	public final class ObjectFieldTranslator extends FieldTranslator
@@ -953,31 +1079,93 @@ public abstract class TranslatorObjectDatastore extends BaseObjectDatastore
 			super(converters);
 		}
 
-		private Comparator<Field> fieldComparator = new Comparator<Field>()
+		/**
+		 * Decodes the sorted properties of an entity by giving each field the
+		 * range of properties it had in previous entities of the same kind.
+		 * Entities with properties in a new layout are decoded as usual.
+		 */
+		final Object decodeEntity(String kind, Set<Property> properties, Class<?> type)
 		{
-			@Override
-			public int compare(Field o1, Field o2)
+			if (properties instanceof ArraySortedSet<?> == false)
 			{
-				return configuration.name(o1).compareTo(configuration.name(o2));
+				return decode(properties, Path.EMPTY_PATH, type);
+			}
+			
+			ArraySortedSet<Property> sorted = (ArraySortedSet<Property>) properties;
+			EntityShape shape = shape(kind, sorted, type);
+			if (shape == null)
+			{
+				return decode(properties, Path.EMPTY_PATH, type);
 			}
-		};
 
-		// TODO put this in a dedicated meta-data holder
-		@Override
-		protected Collection<Field> getSortedAccessibleFields(Class<?> clazz)
+			Object instance = createInstance(type);
+			if (instance.getClass() != shape.getModel().getType())
+			{
+				// a sub-class has different fields
+				decodeFields(instance, properties, Path.EMPTY_PATH);
+				return instance;
+			}
+
+			FieldModel[] fields = shape.getModel().getStoredFieldModels();
+			for (int i = 0; i < fields.length; i++)
+			{
+				decodeField(instance, fields[i].getField(), fields[i].getPath(), shape.fieldProperties(sorted, i));
+			}
+			return instance;
+		}
+
+		private EntityShape shape(String kind, ArraySortedSet<Property> properties, Class<?> type)
 		{
-			// stored unsorted because order depends on configuration.name()
-			Collection<Field> unsorted = classFields.get(clazz);
-			if (unsorted == null)
+			// learned layouts are shared by datastores with the same configuration
+			ConcurrentMap<String, EntityShape[]> shapes = models.shapes;
+			EntityShape[] existing = shapes.get(kind);
+			if (existing != null)
 			{
-				//cache costly reflection
-				unsorted = Reflection.getAccessibleFields(clazz);
-				classFields.put(clazz, unsorted);
+				for (EntityShape shape : existing)
+				{
+					if (shape.matches(properties))
+					{
+						return shape;
+					}
+				}
+				
+				// only remember a few layouts of each kind
+				if (existing.length == MAXIMUM_SHAPES_PER_KIND)
+				{
+					return null;
+				}
+			}
+
+			EntityShape shape = EntityShape.learn(model(type), properties);
+			if (shape != null)
+			{
+				EntityShape[] learned;
+				if (existing == null)
+				{
+					learned = new EntityShape[] { shape };
+				}
+				else
+				{
+					learned = Arrays.copyOf(existing, existing.length + 1);
+					learned[existing.length] = shape;
+				}
+
+				// a layout learned by another thread at the same time is learned again later
+				shapes.put(kind, learned);
 			}
+			return shape;
+		}
 
-			Set<Field> fields = new TreeSet<Field>(fieldComparator);
-			fields.addAll(unsorted);
-			return fields;
+		@Override
+		protected Collection<Field> getSortedAccessibleFields(Class<?> clazz)
+		{
+			return model(clazz).getSortedFields();
+		}
+
+		@Override
+		protected Field[] getSortedStoredFields(Class<?> clazz)
+		{
+			return model(clazz).getStoredFields();
 		}
 		
 		@Override
@@ -1003,27 +1191,44 @@ public abstract class TranslatorObjectDatastore extends BaseObjectDatastore
 		@Override
 		protected boolean indexed(Field field)
 		{
-			Boolean index = TranslatorObjectDatastore.this.configuration.index(field);
-			return index == null ? defaultIndexFields : index;
+			return model(field).isIndexed();
 		}
 
 		@Override
 		protected boolean stored(Field field)
 		{
-			return TranslatorObjectDatastore.this.configuration.store(field);
+			return model(field).isStored();
 		}
 
 		@Override
 		protected Type type(Field field)
 		{
-			// TODO look up the type in current Registration
-			return TranslatorObjectDatastore.this.configuration.typeOf(field);
+			return model(field).getType();
 		}
 
 		@Override
 		protected String fieldToPartName(Field field)
 		{
-			return TranslatorObjectDatastore.this.configuration.name(field);
+			return model(field).getName();
+		}
+
+		@Override
+		protected Part fieldToPart(Field field)
+		{
+			return model(field).getPart();
+		}
+
+		@Override
+		protected FieldAccessor accessor(Field field)
+		{
+			return model(field).getAccessor();
+		}
+
+		// overridden only so that DirectEntityCodec in this package can call it
+		@Override
+		protected Set<Property> encodeField(Object instance, Field field, Path path, boolean indexed)
+		{
+			return super.encodeField(instance, field, path, indexed);
 		}
 
 		@Override
@@ -1075,10 +1280,10 @@ public abstract class TranslatorObjectDatastore extends BaseObjectDatastore
 		{
 			// temporarily change the activation depth if this field has one set
 			StandardDecodeCommand<?> decode = (StandardDecodeCommand<?>) command;
-			int depth = configuration.activationDepth(field, decode.getDepth());
+			int depth = model(field).activationDepth(decode.getDepth());
 			decode.setDepth(depth);
 
-			final Object value = Reflection.get(field, instance);
+			final Object value = Reflection.get(model(field).getAccessor(), instance);
 
 			// when denormalising we enhance the existing value
 			if (denormalising)
@@ -1105,78 +1310,218 @@ public abstract class TranslatorObjectDatastore extends BaseObjectDatastore
 		}
 	}
 	
-	// TODO roll this meta-data into a single class that is looked up once only
 	Field idField(Class<?> type)
 	{
-		Field result = null;
-		if (idFields.containsKey(type))
-		{
-			result = idFields.get(type);
-		}
-		else
+		FieldModel field = model(type).getIdField();
+		return field == null ? null : field.getField();
+	}
+
+	Field keyField(Class<?> type)
+	{
+		FieldModel field = model(type).getKeyField();
+		return field == null ? null : field.getField();
+	}
+
+	/**
+	 * @return The cached persistent field configuration of the type
+	 */
+	final ClassModel model(Class<?> type)
+	{
+		ClassModel model = models.classModel(type);
+		if (model == null)
 		{
-			List<Field> fields = Reflection.getAccessibleFields(type);
-			for (Field field : fields)
+			// stored unsorted because order depends on configuration.name()
+			Collection<Field> unsorted = classFields.get(type);
+			if (unsorted == null)
+			{
+				//cache costly reflection
+				unsorted = Reflection.getAccessibleFields(type);
+				classFields.put(type, unsorted);
+			}
+
+			// sort by property name - the first field wins if two share a name
+			SortedMap<String, FieldModel> sorted = new TreeMap<String, FieldModel>();
+			for (Field field : unsorted)
 			{
-				if (configuration.id(field))
+				FieldModel fieldModel = model(field);
+				if (!sorted.containsKey(fieldModel.getName()))
 				{
-					result = field;
-					break;
+					sorted.put(fieldModel.getName(), fieldModel);
 				}
 			}
 
-			// null cannot be stored in a concurrent hash map
-			if (result == null)
+			// another datastore may have built an equal model
+			model = new ClassModel(type, new ArrayList<FieldModel>(sorted.values()));
+			ClassModel existing = models.classModels.putIfAbsent(type, model);
+			if (existing != null)
 			{
-				result = NO_ID_FIELD;
+				model = existing;
 			}
-			idFields.put(type, result);
 		}
+		return model;
+	}
 
-		if (result == NO_ID_FIELD)
+	/**
+	 * Builds the model of the type and any embedded types along with their
+	 * constructors and the converters used to decode native field values.
+	 * 
+	 * @param warmed Types that have already been warmed up and should be skipped
+	 */
+	final void warmUp(Class<?> type, Set<Class<?>> warmed)
+	{
+		if (!warmed.add(type))
 		{
-			return null;
+			return;
 		}
-		else
+		
+		ClassModel model = model(type);
+		
+		if (!Modifier.isAbstract(type.getModifiers()))
 		{
-			return result;
+			try
+			{
+				objectFieldTranslator.getDefaultConstructor(type);
+			}
+			catch (NoSuchMethodException e)
+			{
+				// subclasses may create instances some other way
+			}
+		}
+		
+		for (FieldModel field : model.getStoredFieldModels())
+		{
+			Class<?> erased = field.getField().getType();
+			if (field.isDirectDecode())
+			{
+				registry.converter(storedType(erased), field.getType());
+			}
+			else if (configuration.embed(field.getField()) && !erased.isInterface() && !erased.isArray())
+			{
+				warmUp(erased, warmed);
+			}
 		}
 	}
 
-	Field keyField(Class<?> type)
+	/**
+	 * Share the models built so far as an immutable snapshot
+	 */
+	final void freezeModels()
 	{
-		Field result = null;
-		if (keyFields.containsKey(type))
+		models.freeze();
+	}
+
+	// the datastore widens all integers to long and all decimals to double
+	private static Class<?> storedType(Class<?> type)
+	{
+		type = Primitives.wrap(type);
+		if (type == Integer.class || type == Short.class || type == Byte.class)
 		{
-			result = keyFields.get(type);
+			return Long.class;
 		}
-		else
+		else if (type == Float.class)
+		{
+			return Double.class;
+		}
+		return type;
+	}
+
+	/**
+	 * @return The cached configuration of the field
+	 */
+	final FieldModel model(Field field)
+	{
+		FieldModel model = models.fieldModels.get(field);
+		if (model == null)
 		{
-			List<Field> fields = Reflection.getAccessibleFields(type);
-			for (Field field : fields)
+			boolean stored = configuration.store(field);
+			Boolean index = configuration.index(field);
+			boolean indexed = index == null ? defaultIndexFields : index;
+			int depth = configuration.activationDepth(field, FieldModel.INHERIT_DEPTH);
+			Type type = configuration.typeOf(field);
+			Role role = role(field);
+			int serializationThreshold = configuration.serializationThreshold(field);
+
+			Set<String> denormalise = null;
+			if (role == Role.PARENT || role == Role.CHILD || role == Role.RELATION)
 			{
-				if (configuration.key(field))
+				String[] paths = configuration.denormalise(field);
+				if (paths != null)
 				{
-					result = field;
-					break;
+					denormalise = ImmutableSet.copyOf(paths);
 				}
 			}
 
-			// null cannot be stored in a concurrent hash map
-			if (result == null)
+			// plain values with no type conversion can by-pass the translators
+			boolean directEncode = stored && role == Role.VALUE && serializationThreshold < 0 && type.equals(field.getGenericType());
+			Class<?> erased = field.getType();
+			boolean directDecode = directEncode && (erased.isPrimitive() || DataTypeUtils.isSupportedType(erased));
+
+			model = new FieldModel(field,
+					configuration.name(field),
+					stored,
+					indexed,
+					type,
+					depth,
+					configuration.id(field),
+					configuration.key(field),
+					role,
+					denormalise,
+					serializationThreshold,
+					directEncode,
+					directDecode);
+
+			FieldModel existing = models.fieldModels.putIfAbsent(field, model);
+			if (existing != null)
 			{
-				result = NO_ID_FIELD;
+				model = existing;
 			}
-			keyFields.put(type, result);
 		}
+		return model;
+	}
 
-		if (result == NO_ID_FIELD)
+	private Role role(Field field)
+	{
+		if (configuration.entity(field))
 		{
-			return null;
+			if (configuration.parent(field))
+			{
+				return Role.PARENT;
+			}
+			else if (configuration.child(field))
+			{
+				return Role.CHILD;
+			}
+			else
+			{
+				return Role.RELATION;
+			}
+		}
+		else if (field.isAnnotationPresent(Root.class))
+		{
+			return Role.CONTAINER;
+		}
+		else if (configuration.id(field))
+		{
+			return Role.ID;
+		}
+		else if (configuration.embed(field))
+		{
+			if (configuration.polymorphic(field))
+			{
+				return Role.POLYMORPHIC;
+			}
+			else
+			{
+				return Role.EMBED;
+			}
+		}
+		else if (configuration.key(field))
+		{
+			return Role.KEY;
 		}
 		else
 		{
-			return result;
+			return Role.VALUE;
 		}
 	}
 
@@ -1197,20 +1542,5 @@ public abstract class TranslatorObjectDatastore extends BaseObjectDatastore
 		return configuration;
 	}
 
-	// null values are not permitted in a concurrent hash map so
-	// need a special value to represent a missing field
-	private static final Field NO_ID_FIELD;
-	static
-	{
-		try
-		{
-			NO_ID_FIELD = TranslatorObjectDatastore.class.getDeclaredField("NO_ID_FIELD");
-		}
-		catch (Exception e)
-		{
-			throw new IllegalStateException(e);
-		}
-	}
-
 	protected static final Function<Entity, Key> entityToKeyFunction = new EntityToKeyFunction();
 }
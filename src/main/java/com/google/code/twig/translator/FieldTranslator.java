@@ -3,10 +3,12 @@ package com.google.code.twig.translator;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.Type;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
@@ -14,9 +16,12 @@ import java.util.logging.Logger;
 
 import com.google.appengine.api.datastore.DataTypeUtils;
 import com.google.appengine.api.datastore.Key;
+import com.google.code.twig.EncodeSink;
 import com.google.code.twig.Path;
+import com.google.code.twig.Path.Part;
 import com.google.code.twig.Property;
 import com.google.code.twig.PropertyTranslator;
+import com.google.code.twig.util.FieldAccessor;
 import com.google.code.twig.util.PrefixPropertySet;
 import com.google.code.twig.util.PropertySets;
 import com.google.code.twig.util.Reflection;
@@ -64,6 +69,16 @@ public abstract class FieldTranslator implements PropertyTranslator
 		// sanity check that our instance is the correct type
 		assert clazz.isAssignableFrom(instance.getClass());
 
+		decodeFields(instance, properties, path);
+
+		return instance;
+	}
+
+	/**
+	 * Set the fields of a new instance from the properties under a path
+	 */
+	protected final void decodeFields(Object instance, Set<Property> properties, Path path)
+	{
 		// ensure the properties are sorted
 		if (properties instanceof SortedSet<?> == false)
 		{
@@ -73,59 +88,54 @@ public abstract class FieldTranslator implements PropertyTranslator
 		}
 
 		// both fields and properties are sorted by field name
-		Collection<Field> fields = getSortedAccessibleFields(instance.getClass());
+		Field[] fields = getSortedStoredFields(instance.getClass());
 		Iterator<PrefixPropertySet> ppss = PropertySets.prefixPropertySets(properties, path).iterator();
 		PrefixPropertySet pps = null;
-		for (Field field : fields)
+		for (int i = 0; i < fields.length; i++)
 		{
-			if (stored(field))
-			{
-				String name = fieldToPartName(field);
-				Path fieldPath = new Path.Builder(path).field(name).build();
+			Field field = fields[i];
+			Path fieldPath = path.child(fieldToPart(field));
 
-				// handle missing class fields by ignoring the properties
-				while (ppss.hasNext())
+			// handle missing class fields by ignoring the properties
+			while (ppss.hasNext())
+			{
+				if (pps == null)
 				{
-					if (pps == null)
-					{
-						pps = ppss.next();
-					}
-
-					if (pps.getPrefix().compareTo(fieldPath) < 0)
-					{
-						log.warning("No field found for properties with prefix " + pps.getPrefix() + " in class " + clazz);
-
-						// get more properties
-						pps = null;
-					}
-					else
-					{
-						break;
-					}
+					pps = ppss.next();
 				}
 
-				// if there are no properties for the field we must still
-				// run a translator because some translators do not require
-				// any properties to set a field value e.g. KeyTranslator
-				Set<Property> childProperties;
-				if (pps == null || !fieldPath.equals(pps.getPrefix()))
+				if (pps.getPrefix().compareTo(fieldPath) < 0)
 				{
-					// there were no properties for this field
-					childProperties = Collections.emptySet();
+					log.warning("No field found for properties with prefix " + pps.getPrefix() + " in class " + instance.getClass());
+
+					// get more properties
+					pps = null;
 				}
 				else
 				{
-					childProperties = pps.getProperties();
-
-					// indicate we used these properties
-					pps = null;
+					break;
 				}
+			}
 
-				decodeField(instance, field, fieldPath, childProperties);
+			// if there are no properties for the field we must still
+			// run a translator because some translators do not require
+			// any properties to set a field value e.g. KeyTranslator
+			Set<Property> childProperties;
+			if (pps == null || !fieldPath.equals(pps.getPrefix()))
+			{
+				// there were no properties for this field
+				childProperties = Collections.emptySet();
 			}
-		}
+			else
+			{
+				childProperties = pps.getProperties();
 
-		return instance;
+				// indicate we used these properties
+				pps = null;
+			}
+
+			decodeField(instance, field, fieldPath, childProperties);
+		}
 	}
 
 	protected Comparator<Field> getFieldComparator()
@@ -191,7 +201,7 @@ public abstract class FieldTranslator implements PropertyTranslator
 	{
 		try
 		{
-			Reflection.set(field, instance, value);
+			Reflection.set(accessor(field), instance, value);
 		}
 		catch (Exception e)
 		{
@@ -207,11 +217,24 @@ public abstract class FieldTranslator implements PropertyTranslator
 	{
 	}
 
+	protected FieldAccessor accessor(Field field)
+	{
+		return FieldAccessor.of(field);
+	}
+
 	protected String fieldToPartName(Field field)
 	{
 		return field.getName();
 	}
 
+	/**
+	 * @return The path part of the field which is shared by all paths to it
+	 */
+	protected Part fieldToPart(Field field)
+	{
+		return Path.fieldPart(fieldToPartName(field));
+	}
+
 	protected Type type(Field field)
 	{
 		return field.getGenericType();
@@ -238,6 +261,25 @@ public abstract class FieldTranslator implements PropertyTranslator
 
 	protected abstract Collection<Field> getSortedAccessibleFields(Class<?> clazz);
 
+	/**
+	 * Override to return a cached array which is walked for every instance
+	 * 
+	 * @return The fields that are {@link #stored(Field)} in property name order
+	 */
+	protected Field[] getSortedStoredFields(Class<?> clazz)
+	{
+		Collection<Field> fields = getSortedAccessibleFields(clazz);
+		List<Field> stored = new ArrayList<Field>(fields.size());
+		for (Field field : fields)
+		{
+			if (stored(field))
+			{
+				stored.add(field);
+			}
+		}
+		return stored.toArray(new Field[stored.size()]);
+	}
+
 	public Set<Property> encode(Object instance, Path path, boolean indexed)
 	{
 		if (instance == null)
@@ -247,51 +289,13 @@ public abstract class FieldTranslator implements PropertyTranslator
 
 		try
 		{
-			Collection<Field> fields = getSortedAccessibleFields(instance.getClass());
-			MergeSet<Property> merged = new MergeSet<Property>(fields.size());
-			for (Field field : fields)
+			Field[] fields = getSortedStoredFields(instance.getClass());
+			MergeSet<Property> merged = new MergeSet<Property>(fields.length);
+			for (int i = 0; i < fields.length; i++)
 			{
-				if (stored(field))
-				{
-					// get the type that we need to store
-					Type type = type(field);
-
-					if (GenericType.class.isAssignableFrom(Generics.erase(type)))
-					{
-						type = Generics.getTypeParameter(type, GenericType.class.getTypeParameters()[0]);
-					}
-
-					Object value = Reflection.get(field, instance);
-
-					Path childPath = new Path.Builder(path).field(fieldToPartName(field)).build();
-
-					Set<Property> encoded;
-					if (value == null && indexed)
-					{
-						// only store null if it is indexed
-						encoded = PropertySets.singletonPropertySet(childPath, null, indexed(field));
-					}
-					else
-					{
-						// convert the object if a type was configured
-						if (!type.equals(field.getGenericType()))
-						{
-							// field might be a generic parameter if declared in super type
-							Type from = Generics.getExactFieldType(field, instance.getClass());
-
-							value = converters.convert(value, from, type);
-						}
-
-						PropertyTranslator translator = encoder(field, instance);
-						encoded = translator.encode(value, childPath, indexed(field));
-						if (encoded == null)
-						{
-							throw new IllegalStateException("Could not translate value to properties: " + value);
-						}
-					}
-
-					merged.addAll(encoded);
-				}
+				Field field = fields[i];
+				Path childPath = path.child(fieldToPart(field));
+				merged.addAll(encodeField(instance, field, childPath, indexed));
 			}
 
 			return merged;
@@ -309,6 +313,84 @@ public abstract class FieldTranslator implements PropertyTranslator
 		}
 	}
 
+	/**
+	 * Encodes the fields of the instance straight into the sink rather than
+	 * merging the properties of every field into a set
+	 */
+	public void encode(Object instance, Path path, boolean indexed, EncodeSink sink)
+	{
+		if (instance == null)
+		{
+			return;
+		}
+
+		try
+		{
+			Field[] fields = getSortedStoredFields(instance.getClass());
+			for (int i = 0; i < fields.length; i++)
+			{
+				Field field = fields[i];
+				Path childPath = path.child(fieldToPart(field));
+				sink.properties(encodeField(instance, field, childPath, indexed));
+			}
+		}
+		catch (IllegalArgumentException e)
+		{
+			if (DataTypeUtils.isSupportedType(instance.getClass()))
+			{
+				throw new IllegalStateException("Native data type " + instance.getClass() + " should not be configured as embedded", e);
+			}
+			else
+			{
+				throw e;
+			}
+		}
+	}
+
+	/**
+	 * Encode the value of a single stored field
+	 * 
+	 * @param indexed Is the instance which contains the field indexed
+	 */
+	protected Set<Property> encodeField(Object instance, Field field, Path path, boolean indexed)
+	{
+		// get the type that we need to store
+		Type type = type(field);
+
+		if (GenericType.class.isAssignableFrom(Generics.erase(type)))
+		{
+			type = Generics.getTypeParameter(type, GenericType.class.getTypeParameters()[0]);
+		}
+
+		Object value = Reflection.get(accessor(field), instance);
+
+		Set<Property> encoded;
+		if (value == null && indexed)
+		{
+			// only store null if it is indexed
+			encoded = PropertySets.singletonPropertySet(path, null, indexed(field));
+		}
+		else
+		{
+			// convert the object if a type was configured
+			if (!type.equals(field.getGenericType()))
+			{
+				// field might be a generic parameter if declared in super type
+				Type from = Generics.getExactFieldType(field, instance.getClass());
+
+				value = converters.convert(value, from, type);
+			}
+
+			PropertyTranslator translator = encoder(field, instance);
+			encoded = translator.encode(value, path, indexed(field));
+			if (encoded == null)
+			{
+				throw new IllegalStateException("Could not translate value to properties: " + value);
+			}
+		}
+		return encoded;
+	}
+
 	protected abstract boolean indexed(Field field);
 
 	protected abstract boolean stored(Field field);
@@ -0,0 +1,78 @@
+package com.google.code.twig.util;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A future for work that was started asynchronously, such as a query, but
+ * whose result is only computed on the calling thread when first asked for.
+ */
+public abstract class DeferredFuture<T> implements Future<T>
+{
+	private T result;
+	private Throwable failure;
+	private boolean done;
+	private boolean cancelled;
+
+	protected abstract T compute() throws Exception;
+
+	public synchronized boolean cancel(boolean mayInterruptIfRunning)
+	{
+		if (done)
+		{
+			return false;
+		}
+		cancelled = true;
+		done = true;
+		return true;
+	}
+
+	public synchronized boolean isCancelled()
+	{
+		return cancelled;
+	}
+
+	public synchronized boolean isDone()
+	{
+		return done;
+	}
+
+	public synchronized T get() throws InterruptedException, ExecutionException
+	{
+		if (cancelled)
+		{
+			throw new CancellationException();
+		}
+
+		if (!done)
+		{
+			try
+			{
+				result = compute();
+			}
+			catch (Throwable t)
+			{
+				failure = t;
+			}
+			done = true;
+		}
+
+		if (failure != null)
+		{
+			throw new ExecutionException(failure);
+		}
+		return result;
+	}
+
+	/**
+	 * The result is computed on the calling thread when it is first asked for
+	 * so it is returned as from {@link #get()} whatever the timeout
+	 */
+	public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException
+	{
+		return get();
+	}
+}
@@ -0,0 +1,249 @@
+package com.google.code.twig.util;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.collect.Maps;
+
+/**
+ * Reads and writes a single field using method handles which are resolved
+ * once and then invoked without the access checks of {@link Field#get(Object)}.
+ * Falls back to reflection if a handle cannot be created.
+ */
+public abstract class FieldAccessor
+{
+	// permanent cache of accessors shared by all datastores
+	private static final ConcurrentMap<Field, FieldAccessor> accessors = Maps.newConcurrentMap();
+
+	// accessors generated at compile time for each declaring class
+	private static final ConcurrentMap<Class<?>, FieldAccessorFactory> factories = Maps.newConcurrentMap();
+
+	// null values are not permitted in a concurrent map
+	private static final FieldAccessorFactory NO_FACTORY = new FieldAccessorFactory()
+	{
+		@Override
+		public FieldAccessor accessor(Field field)
+		{
+			return null;
+		}
+	};
+
+	private static final MethodType GETTER = MethodType.methodType(Object.class, Object.class);
+	private static final MethodType SETTER = MethodType.methodType(void.class, Object.class, Object.class);
+
+	protected final Field field;
+
+	protected FieldAccessor(Field field)
+	{
+		this.field = field;
+	}
+
+	public static FieldAccessor of(Field field)
+	{
+		FieldAccessor accessor = accessors.get(field);
+		if (accessor == null)
+		{
+			accessor = create(field);
+			FieldAccessor existing = accessors.putIfAbsent(field, accessor);
+			if (existing != null)
+			{
+				accessor = existing;
+			}
+		}
+		return accessor;
+	}
+
+	private static FieldAccessor create(Field field)
+	{
+		// prefer code generated by the annotation processor
+		FieldAccessor generated = factory(field.getDeclaringClass()).accessor(field);
+		if (generated != null)
+		{
+			return generated;
+		}
+
+		if (!field.isAccessible())
+		{
+			field.setAccessible(true);
+		}
+
+		MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+		MethodHandle getter;
+		try
+		{
+			// adapt once to an untyped signature so invokeExact can be used
+			getter = lookup.unreflectGetter(field).asType(GETTER);
+		}
+		catch (IllegalAccessException e)
+		{
+			return new ReflectionFieldAccessor(field);
+		}
+
+		MethodHandle setter;
+		try
+		{
+			setter = lookup.unreflectSetter(field).asType(SETTER);
+		}
+		catch (IllegalAccessException e)
+		{
+			// final fields may refuse write access
+			setter = null;
+		}
+
+		return new MethodHandleFieldAccessor(field, getter, setter);
+	}
+
+	private static FieldAccessorFactory factory(Class<?> type)
+	{
+		FieldAccessorFactory factory = factories.get(type);
+		if (factory == null)
+		{
+			try
+			{
+				String name = type.getName() + FieldAccessorFactory.SUFFIX;
+				Class<?> generated = Class.forName(name, true, type.getClassLoader());
+				factory = (FieldAccessorFactory) generated.newInstance();
+			}
+			catch (ClassNotFoundException e)
+			{
+				factory = NO_FACTORY;
+			}
+			catch (Exception e)
+			{
+				throw new IllegalStateException("Could not create generated accessors for " + type, e);
+			}
+			factories.put(type, factory);
+		}
+		return factory;
+	}
+
+	public final Field getField()
+	{
+		return field;
+	}
+
+	public abstract Object get(Object instance);
+
+	public abstract void set(Object instance, Object value);
+
+	/**
+	 * Sets the value with the widening conversions and checks of {@link Field#set(Object, Object)}
+	 */
+	protected final void setByReflection(Object instance, Object value)
+	{
+		if (!field.isAccessible())
+		{
+			field.setAccessible(true);
+		}
+		ReflectionFieldAccessor.set(field, instance, value);
+	}
+
+	private static final class MethodHandleFieldAccessor extends FieldAccessor
+	{
+		private final MethodHandle getter;
+		private final MethodHandle setter;
+
+		MethodHandleFieldAccessor(Field field, MethodHandle getter, MethodHandle setter)
+		{
+			super(field);
+			this.getter = getter;
+			this.setter = setter;
+		}
+
+		@Override
+		public Object get(Object instance)
+		{
+			try
+			{
+				return (Object) getter.invokeExact(instance);
+			}
+			catch (RuntimeException e)
+			{
+				throw e;
+			}
+			catch (Error e)
+			{
+				throw e;
+			}
+			catch (Throwable t)
+			{
+				throw new RuntimeException(t);
+			}
+		}
+
+		@Override
+		public void set(Object instance, Object value)
+		{
+			if (setter == null)
+			{
+				ReflectionFieldAccessor.set(field, instance, value);
+				return;
+			}
+
+			try
+			{
+				setter.invokeExact(instance, value);
+			}
+			catch (ClassCastException e)
+			{
+				// reflection also performs widening conversions of primitives
+				ReflectionFieldAccessor.set(field, instance, value);
+			}
+			catch (RuntimeException e)
+			{
+				throw e;
+			}
+			catch (Error e)
+			{
+				throw e;
+			}
+			catch (Throwable t)
+			{
+				throw new RuntimeException(t);
+			}
+		}
+	}
+
+	private static final class ReflectionFieldAccessor extends FieldAccessor
+	{
+		ReflectionFieldAccessor(Field field)
+		{
+			super(field);
+		}
+
+		@Override
+		public Object get(Object instance)
+		{
+			try
+			{
+				return field.get(instance);
+			}
+			catch (Exception e)
+			{
+				throw new RuntimeException(e);
+			}
+		}
+
+		@Override
+		public void set(Object instance, Object value)
+		{
+			set(field, instance, value);
+		}
+
+		static void set(Field field, Object instance, Object value)
+		{
+			try
+			{
+				field.set(instance, value);
+			}
+			catch (Exception e)
+			{
+				throw new RuntimeException(e);
+			}
+		}
+	}
+}
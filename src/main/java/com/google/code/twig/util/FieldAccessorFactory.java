@@ -0,0 +1,19 @@
+package com.google.code.twig.util;
+
+import java.lang.reflect.Field;
+
+/**
+ * Implemented by classes generated at compile time by the twig-persist-processor
+ * to access the fields of a single class without reflection. A generated factory
+ * is named after the binary name of the class with {@link #SUFFIX} appended.
+ */
+public interface FieldAccessorFactory
+{
+	String SUFFIX = "_FieldAccessors";
+
+	/**
+	 * @param field A field declared by the class this factory was generated for
+	 * @return An accessor or null if the field cannot be accessed directly
+	 */
+	FieldAccessor accessor(Field field);
+}
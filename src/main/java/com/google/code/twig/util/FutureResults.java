@@ -0,0 +1,43 @@
+package com.google.code.twig.util;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Waits for the results of async datastore calls which only fail with
+ * runtime exceptions so the checked exceptions of {@link Future} are removed.
+ */
+public final class FutureResults
+{
+	private FutureResults()
+	{
+	}
+
+	public static <T> T get(Future<T> future)
+	{
+		try
+		{
+			return future.get();
+		}
+		catch (InterruptedException e)
+		{
+			throw new IllegalStateException(e);
+		}
+		catch (ExecutionException e)
+		{
+			throw unchecked(e);
+		}
+	}
+
+	/**
+	 * @return The cause of the failure if it is unchecked or else a wrapper of it
+	 */
+	public static RuntimeException unchecked(ExecutionException e)
+	{
+		if (e.getCause() instanceof RuntimeException)
+		{
+			return (RuntimeException) e.getCause();
+		}
+		return new IllegalStateException(e.getCause());
+	}
+}
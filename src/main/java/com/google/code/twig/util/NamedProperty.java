@@ -0,0 +1,86 @@
+package com.google.code.twig.util;
+
+import com.google.code.twig.Path;
+import com.google.code.twig.Property;
+
+/**
+ * A property read from an entity which only parses its name into a
+ * {@link Path} when it is needed. Paths are ordered the same as their
+ * text so these properties can be sorted by name alone.
+ */
+final class NamedProperty implements Property
+{
+	private final String name;
+	private final Object value;
+	private final boolean indexed;
+	private Path path;
+
+	NamedProperty(String name, Object value, boolean indexed)
+	{
+		this.name = name;
+		this.value = value;
+		this.indexed = indexed;
+	}
+
+	String getName()
+	{
+		return name;
+	}
+
+	public Path getPath()
+	{
+		if (path == null)
+		{
+			path = new Path(name);
+		}
+		return path;
+	}
+
+	public Object getValue()
+	{
+		return value;
+	}
+
+	public boolean isIndexed()
+	{
+		return indexed;
+	}
+
+	public int compareTo(Property o)
+	{
+		// entity property names are unique so values need not be compared
+		if (o instanceof NamedProperty)
+		{
+			return name.compareTo(((NamedProperty) o).name);
+		}
+		return getPath().compareTo(o.getPath());
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return name.hashCode();
+	}
+
+	@Override
+	public boolean equals(Object obj)
+	{
+		if (this == obj)
+		{
+			return true;
+		}
+		if (obj instanceof NamedProperty == false)
+		{
+			return false;
+		}
+		NamedProperty other = (NamedProperty) obj;
+		return indexed == other.indexed && name.equals(other.name)
+				&& (value == null ? other.value == null : value.equals(other.value));
+	}
+
+	@Override
+	public String toString()
+	{
+		return name + "=" + value;
+	}
+}
@@ -1,14 +1,18 @@
 package com.google.code.twig.util;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
+import java.util.SortedSet;
 
 import com.google.code.twig.Path;
 import com.google.code.twig.Path.Part;
 import com.google.code.twig.Property;
+import com.google.code.twig.Restriction;
 import com.google.code.twig.util.collections.ArraySortedSet;
 
 /**
@@ -40,14 +44,15 @@ public class PropertySets
 
 	public static Collection<PrefixPropertySet> prefixPropertySets(Set<Property> properties, Path prefix)
 	{
-		Property[] array = (Property[]) properties.toArray(new Property[properties.size()]);
+		// slice sorted arrays by index without copying the properties
+		ArraySortedSet<Property> array = toArraySortedSet(properties);
 		Collection<PrefixPropertySet> result = new ArrayList<PrefixPropertySet>();
 		Part part = null;
 		int start = 0;
 		int end;
-		for (end = 0; end < array.length; end++)
+		for (end = 0; end < array.size(); end++)
 		{
-			Path path = array[end].getPath();
+			Path path = array.get(end).getPath();
 			if (path.hasPrefix(prefix))
 			{
 				// ignore the base prefix properties
@@ -86,18 +91,64 @@ public class PropertySets
 		return result;
 	}
 
-	private static PrefixPropertySet createPrefixSubset(Path prefix, Property[] array, Part part, int start, int i)
+	private static ArraySortedSet<Property> toArraySortedSet(Set<Property> properties)
 	{
-		Set<Property> subset = new ArraySortedSet<Property>(array, start, i - start, null);
-		PrefixPropertySet ppf = new PrefixPropertySet(Path.builder(prefix).append(part).build(), subset);
+		if (properties instanceof ArraySortedSet<?>)
+		{
+			return (ArraySortedSet<Property>) properties;
+		}
+		else
+		{
+			return new ArraySortedSet<Property>(properties.toArray(new Property[properties.size()]));
+		}
+	}
+
+	private static PrefixPropertySet createPrefixSubset(Path prefix, ArraySortedSet<Property> array, Part part, int start, int i)
+	{
+		Set<Property> subset = array.slice(start, i);
+		PrefixPropertySet ppf = new PrefixPropertySet(prefix.child(part), subset);
 		return ppf;
 	}
 
+	/**
+	 * Sort the properties of an entity once into an array which can be 
+	 * split into field values without copying. 
+	 * 
+	 * @param restriction Only include allowed properties or null for all
+	 */
+	public static SortedSet<Property> sorted(Map<String, Object> properties, boolean indexed, Restriction<Property> restriction)
+	{
+		Property[] array = new Property[properties.size()];
+		int size = 0;
+		for (Entry<String, Object> entry : properties.entrySet())
+		{
+			Property property = new NamedProperty(entry.getKey(), entry.getValue(), indexed);
+			if (restriction == null || restriction.allow(property))
+			{
+				array[size++] = property;
+			}
+		}
+		Arrays.sort(array, 0, size);
+		return new ArraySortedSet<Property>(array, 0, size, null);
+	}
+
 	public static Set<Property> create(Map<String, Object> properties, boolean indexed)
 	{
 		return new PropertyMapToSet(properties, indexed);
 	}
 	
+	/**
+	 * @return The property name without building its path if possible
+	 */
+	public static String name(Property property)
+	{
+		if (property instanceof NamedProperty)
+		{
+			return ((NamedProperty) property).getName();
+		}
+		return property.getPath().toString();
+	}
+
 	@SuppressWarnings("unchecked")
 	public static <T> T valueForPath(String path, Set<Property> properties)
 	{
@@ -96,9 +96,26 @@ public class Reflection
 		return constructor.newInstance(arguments);
 	}
 
+	// counts of reflective field access per class which are only kept when enabled
 	public static final Multiset<Class<?>> fieldAccessSet = ConcurrentHashMultiset.create();
 	public static final Multiset<Class<?>> fieldAccessGet = ConcurrentHashMultiset.create();
 
+	private static volatile boolean countFieldAccess;
+
+	/**
+	 * Turn on the {@link #fieldAccessGet} and {@link #fieldAccessSet} counters
+	 * which are shared by all threads and so are off by default.
+	 */
+	public static void setCountFieldAccess(boolean count)
+	{
+		countFieldAccess = count;
+	}
+
+	public static boolean isCountFieldAccess()
+	{
+		return countFieldAccess;
+	}
+
 	public static List<Field> getAccessibleFields(Class<?> type)
 	{
 		List<Field> fields = new ArrayList<Field>();
@@ -123,42 +140,44 @@ public class Reflection
 	}
 
 	public static void set(Field field, Object instance, Object value)
+	{
+		set(FieldAccessor.of(field), instance, value);
+	}
+
+	public static void set(FieldAccessor accessor, Object instance, Object value)
 	{
 		if (instance instanceof FieldAccess)
 		{
-			((FieldAccess) instance).setFieldValue(field.getName(), value);
+			((FieldAccess) instance).setFieldValue(accessor.getField().getName(), value);
 		}
 		else
 		{
-			try
+			if (countFieldAccess)
 			{
 				fieldAccessSet.add(instance.getClass());
-				field.set(instance, value);
-			}
-			catch (Exception e)
-			{
-				throw new RuntimeException(e);
 			}
+			accessor.set(instance, value);
 		}
 	}
 
 	public static Object get(Field field, Object instance)
+	{
+		return get(FieldAccessor.of(field), instance);
+	}
+
+	public static Object get(FieldAccessor accessor, Object instance)
 	{
 		if (instance instanceof FieldAccess)
 		{
-			return ((FieldAccess) instance).getFieldValue(field.getName());
+			return ((FieldAccess) instance).getFieldValue(accessor.getField().getName());
 		}
 		else
 		{
-			try
+			if (countFieldAccess)
 			{
 				fieldAccessGet.add(instance.getClass());
-				return field.get(instance);
-			}
-			catch (Exception e)
-			{
-				throw new RuntimeException(e);
 			}
+			return accessor.get(instance);
 		}
 	}
 
@@ -38,7 +38,32 @@ public class ArraySortedSet<T> extends AbstractSet<T> implements SortedSet<T>
 	@Override
 	public Object[] toArray()
 	{
-		return elements;
+		return Arrays.copyOfRange(elements, offset, offset + length, Object[].class);
+	}
+
+	/**
+	 * @return The element at this index of the set
+	 */
+	public T get(int index)
+	{
+		if (index < 0 || index >= length)
+		{
+			throw new IndexOutOfBoundsException(String.valueOf(index));
+		}
+		return elements[offset + index];
+	}
+
+	/**
+	 * A view of the elements between these indexes of the set which shares
+	 * the same array
+	 */
+	public ArraySortedSet<T> slice(int from, int to)
+	{
+		if (from < 0 || to > length || from > to)
+		{
+			throw new IndexOutOfBoundsException(from + " to " + to);
+		}
+		return new ArraySortedSet<T>(elements, offset + from, to - from, comparator);
 	}
 	
 	@Override
@@ -78,31 +103,46 @@ public class ArraySortedSet<T> extends AbstractSet<T> implements SortedSet<T>
 
 	public T first()
 	{
-		return elements[0];
+		if (length == 0)
+		{
+			throw new NoSuchElementException();
+		}
+		return elements[offset];
 	}
 
 	public SortedSet<T> headSet(T toElement)
 	{
-		int index = Arrays.binarySearch(elements, toElement, comparator);
-		return new ArraySortedSet<T>(elements, 0, index + 1, comparator);
+		return slice(0, indexOf(toElement));
 	}
 
 	public T last()
 	{
+		if (length == 0)
+		{
+			throw new NoSuchElementException();
+		}
 		return elements[offset + length - 1];
 	}
 
 	public SortedSet<T> subSet(T fromElement, T toElement)
 	{
-		int from = Arrays.binarySearch(elements, fromElement);
-		int to = Arrays.binarySearch(elements, toElement);
-		return new ArraySortedSet<T>(elements, from, to - from + 1, comparator);
+		return slice(indexOf(fromElement), indexOf(toElement));
 	}
 
 	public SortedSet<T> tailSet(T fromElement)
 	{
-		int index = Arrays.binarySearch(elements, fromElement);
-		return new ArraySortedSet<T>(elements, index, length, comparator);
+		return slice(indexOf(fromElement), length);
+	}
+
+	// the index of the element or where it would be inserted
+	private int indexOf(T element)
+	{
+		int index = Arrays.binarySearch(elements, offset, offset + length, element, comparator);
+		if (index < 0)
+		{
+			index = -index - 1;
+		}
+		return index - offset;
 	}
 
 }
\ No newline at end of file
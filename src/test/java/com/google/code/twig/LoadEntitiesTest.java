@@ -9,8 +9,11 @@ import org.junit.Test;
 
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Future;
 
+import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.fail;
 
@@ -68,6 +71,19 @@ public class LoadEntitiesTest extends LocalDatastoreTestCase {
 
   }
 
+  @Test
+  public void loadEntitiesLater() throws Exception {
+    storeEntities(3);
+
+    datastore.disassociateAll();
+
+    Future<Map<Object, SpaceStation>> all = datastore.load().type(SpaceStation.class).ids(createKeys(3)).later();
+    Future<SpaceStation> single = datastore.load().type(SpaceStation.class).id("station1").later();
+
+    assertThat(all.get().size(), Is.is(3));
+    assertThat(single.get(), Is.is(sameInstance(all.get().get("station1"))));
+  }
+
   private Set<String> createKeys(int count) {
     Set<String> keySet = new HashSet<String>();
     for (int i = 0; i < count; i++) {
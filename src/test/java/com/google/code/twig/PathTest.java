@@ -0,0 +1,57 @@
+package com.google.code.twig;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class PathTest {
+
+  @Test
+  public void builtPathIsSameAsParsedText() {
+    Path built = Path.builder().field("band").field("members").key("lead").meta("class").build();
+    Path parsed = new Path("band.members:lead$class");
+
+    assertThat(built.toString(), is(equalTo("band.members:lead$class")));
+    assertThat(built, is(equalTo(parsed)));
+    assertThat(parsed, is(equalTo(built)));
+    assertThat(built.hashCode(), is(equalTo(parsed.hashCode())));
+    assertThat(built.compareTo(parsed), is(0));
+    assertThat(built.getDepth(), is(4));
+    assertThat(built.getParts(), is(equalTo(parsed.getParts())));
+  }
+
+  @Test
+  public void pathsFromTheSamePrefixAreOrderedByText() {
+    Path band = Path.builder().field("band").build();
+    Path[] paths = {
+            band.child(Path.fieldPart("name")),
+            band.child(Path.fieldPart("hair")),
+            new Path("band$class"),
+            new Path("band.members"),
+    };
+
+    Arrays.sort(paths);
+
+    assertThat(Arrays.toString(paths), is(equalTo("[band$class, band.hair, band.members, band.name]")));
+  }
+
+  @Test
+  public void findsPrefixOfBuiltAndParsedPaths() {
+    Path band = Path.builder().field("band").build();
+    Path name = band.child(Path.fieldPart("name"));
+
+    assertTrue(name.hasPrefix(band));
+    assertTrue(new Path("band.name").hasPrefix(band));
+    assertFalse(new Path("bandname").hasPrefix(band));
+    assertSame(Path.fieldPart("name"), name.firstPartAfterPrefix(band));
+    assertThat(new Path("band.name.first").firstPartAfterPrefix(band), is(equalTo(Path.fieldPart("name"))));
+    assertThat(name.firstPartAfterPrefix(Path.EMPTY_PATH).getName(), is(equalTo("band")));
+  }
+}
@@ -0,0 +1,139 @@
+package com.google.code.twig.standard;
+
+import com.google.appengine.api.NamespaceManager;
+import com.google.appengine.api.datastore.AsyncDatastoreService;
+import com.google.appengine.api.datastore.KeyRange;
+import com.google.code.twig.LocalDatastoreTestCase;
+import com.google.code.twig.annotation.AnnotationObjectDatastore;
+import com.google.common.util.concurrent.Callables;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class AllocatedIdPoolTest extends LocalDatastoreTestCase {
+
+  private static final String KIND = "allocated";
+  private static final long BLOCK = 10;
+
+  // the ranges returned by every call to allocateIds
+  private final List<Future<KeyRange>> allocations = new ArrayList<Future<KeyRange>>();
+
+  // return a cancelled future from the next call to allocateIds
+  private boolean cancelNext;
+
+  @Before
+  @After
+  public void resetPools() {
+    AllocatedIdPool.reset();
+  }
+
+  @After
+  public void resetNamespace() {
+    NamespaceManager.set(null);
+  }
+
+  private AsyncDatastoreService counting(final AsyncDatastoreService service) {
+    return (AsyncDatastoreService) Proxy.newProxyInstance(
+            getClass().getClassLoader(),
+            new Class<?>[] { AsyncDatastoreService.class },
+            new InvocationHandler() {
+              @Override
+              @SuppressWarnings("unchecked")
+              public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                try {
+                  Object result = method.invoke(service, args);
+                  if (method.getName().equals("allocateIds")) {
+                    if (cancelNext) {
+                      cancelNext = false;
+                      result = new FutureTask<KeyRange>(Callables.<KeyRange>returning(null));
+                      ((Future<?>) result).cancel(false);
+                    }
+                    allocations.add((Future<KeyRange>) result);
+                  }
+                  return result;
+                } catch (InvocationTargetException e) {
+                  throw e.getCause();
+                }
+              }
+            });
+  }
+
+  private AsyncDatastoreService service() {
+    TranslatorObjectDatastore datastore = new AnnotationObjectDatastore();
+    return counting(datastore.asyncService(null));
+  }
+
+  @Test
+  public void datastoresTakeContiguousIdsFromOneBlock() {
+    AsyncDatastoreService first = service();
+    AsyncDatastoreService second = service();
+
+    long start = AllocatedIdPool.nextId(first, null, KIND, BLOCK);
+    for (int i = 1; i < BLOCK; i++) {
+      AsyncDatastoreService service = i % 2 == 0 ? first : second;
+      assertThat(AllocatedIdPool.nextId(service, null, KIND, BLOCK), is(start + i));
+    }
+  }
+
+  @Test
+  public void nextBlockIsAllocatedWhenHalfTheBlockIsUsed() {
+    AsyncDatastoreService service = service();
+
+    for (int i = 0; i < BLOCK / 2 - 1; i++) {
+      AllocatedIdPool.nextId(service, null, KIND, BLOCK);
+    }
+    assertThat(allocations.size(), is(1));
+
+    AllocatedIdPool.nextId(service, null, KIND, BLOCK);
+    assertThat(allocations.size(), is(2));
+
+    // the rest of the block and the first id of the next do not wait for another allocation
+    for (int i = 0; i < BLOCK / 2 + 1; i++) {
+      AllocatedIdPool.nextId(service, null, KIND, BLOCK);
+    }
+    assertThat(allocations.size(), is(2));
+  }
+
+  @Test
+  public void cancelledRefillIsAllocatedAgain() {
+    AsyncDatastoreService service = service();
+
+    List<Long> ids = new ArrayList<Long>();
+    for (int i = 0; i < BLOCK / 2 - 1; i++) {
+      ids.add(AllocatedIdPool.nextId(service, null, KIND, BLOCK));
+    }
+
+    // the early refill is cancelled so the next block is allocated when it is needed
+    cancelNext = true;
+    for (int i = 0; i < BLOCK / 2 + 2; i++) {
+      long id = AllocatedIdPool.nextId(service, null, KIND, BLOCK);
+      assertThat(ids.contains(id), is(false));
+      ids.add(id);
+    }
+    assertThat(allocations.get(1).isCancelled(), is(true));
+    assertThat(allocations.size(), is(3));
+  }
+
+  @Test
+  public void namespacesHaveSeparatePools() {
+    AsyncDatastoreService service = service();
+
+    AllocatedIdPool.nextId(service, null, KIND, BLOCK);
+    NamespaceManager.set("other");
+    AllocatedIdPool.nextId(service, null, KIND, BLOCK);
+
+    assertThat(allocations.size(), is(2));
+  }
+}
@@ -0,0 +1,103 @@
+package com.google.code.twig.standard;
+
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.Text;
+import com.google.code.twig.LocalDatastoreTestCase;
+import com.google.code.twig.annotation.AnnotationObjectDatastore;
+import com.google.code.twig.annotation.Id;
+import com.google.code.twig.annotation.Index;
+import com.google.code.twig.test.space.Pilot;
+import com.google.code.twig.test.space.RocketShip;
+import com.google.code.twig.test.space.RocketShip.Planet;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class DirectEntityCodecTest extends LocalDatastoreTestCase {
+
+  public static class Crew {
+    @Id
+    String name;
+    int size;
+    @Index(false)
+    Long budget;
+    String notes;
+    String motto = "default";
+    List<String> ranks = new ArrayList<String>();
+    Planet home;
+    Pilot captain;
+  }
+
+  private AnnotationObjectDatastore datastore;
+
+  @Before
+  public void createDatastore() {
+    datastore = new AnnotationObjectDatastore();
+    datastore.setDirectCodecs(true);
+  }
+
+  @Test
+  public void nativeFieldsAreWrittenStraightToEntity() throws EntityNotFoundException {
+    Crew crew = aCrew();
+
+    Key key = datastore.store(crew);
+
+    Entity entity = datastore.getDefaultService().get(key);
+    assertThat(entity.getProperty("size"), is(equalTo((Object) 7L)));
+    assertThat(entity.getProperty("budget"), is(equalTo((Object) 1000L)));
+    assertTrue(entity.isUnindexedProperty("budget"));
+    assertTrue(entity.getProperty("notes") instanceof Text);
+    assertThat(entity.getProperty("home"), is(equalTo((Object) "MARS")));
+    assertTrue(entity.getProperty("captain") instanceof Key);
+  }
+
+  @Test
+  public void decodesSameInstanceAsTranslators() {
+    Key key = datastore.store(aCrew());
+    datastore.disassociateAll();
+
+    Crew direct = datastore.load(key);
+
+    AnnotationObjectDatastore translated = new AnnotationObjectDatastore();
+    Crew expected = translated.load(key);
+
+    assertThat(direct.name, is(equalTo(expected.name)));
+    assertThat(direct.size, is(equalTo(expected.size)));
+    assertThat(direct.budget, is(equalTo(expected.budget)));
+    assertThat(direct.notes, is(equalTo(expected.notes)));
+    assertThat(direct.motto, is(equalTo(expected.motto)));
+    assertThat(direct.ranks, is(equalTo(expected.ranks)));
+    assertThat(direct.home, is(equalTo(expected.home)));
+    assertThat(direct.captain.getId(), is(equalTo(expected.captain.getId())));
+    assertThat(direct.captain.getName(), is(equalTo(expected.captain.getName())));
+    assertThat(direct.captain.getSpaceship().getDestination(), is(equalTo(expected.captain.getSpaceship().getDestination())));
+
+    // a stored null replaces the default value of the field
+    assertThat(direct.motto, is(nullValue()));
+    assertThat(direct.captain.getName(), is(equalTo("bob")));
+  }
+
+  private Crew aCrew() {
+    Crew crew = new Crew();
+    crew.name = "red";
+    crew.size = 7;
+    crew.budget = 1000L;
+    crew.notes = new String(new char[600]).replace('\0', 'x');
+    crew.motto = null;
+    crew.ranks = Arrays.asList("captain", "pilot");
+    crew.home = Planet.MARS;
+    crew.captain = new Pilot("bob", new RocketShip(Planet.VENUS));
+    return crew;
+  }
+}
@@ -0,0 +1,116 @@
+package com.google.code.twig.standard;
+
+import com.google.code.twig.LocalDatastoreTestCase;
+import com.google.code.twig.Settings;
+import com.google.code.twig.annotation.AnnotationConfiguration;
+import com.google.code.twig.configuration.Configuration;
+import com.google.code.twig.util.Reflection;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Field;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measures the bytes allocated per entity when walking the persistent fields
+ * of a class, comparing the old sort-on-every-call approach with the cached
+ * array held by {@link ClassModel}. The name does not match the surefire
+ * test patterns so it only runs when asked for:
+ *
+ * <pre>mvn test -Dtest=FieldWalkBenchmark</pre>
+ */
+public class FieldWalkBenchmark extends LocalDatastoreTestCase {
+
+  private static final int ENTITIES = 100000;
+
+  static class Wide {
+    String name;
+    String title;
+    int count;
+    long total;
+    double ratio;
+    boolean active;
+    Date created;
+    Date modified;
+    String owner;
+    String description;
+    List<String> tags;
+    transient String cached;
+  }
+
+  @Test
+  public void cachedFieldsAllocateLessPerEntity() {
+    final Configuration configuration = new AnnotationConfiguration();
+    StandardObjectDatastore datastore = new StandardObjectDatastore(Settings.builder().build(), configuration, 1000, true);
+
+    final Collection<Field> unsorted = Reflection.getAccessibleFields(Wide.class);
+    Comparator<Field> comparator = new Comparator<Field>() {
+      @Override
+      public int compare(Field o1, Field o2) {
+        return configuration.name(o1).compareTo(configuration.name(o2));
+      }
+    };
+
+    // warm up both paths
+    int checksum = 0;
+    for (int i = 0; i < ENTITIES; i++) {
+      checksum += sortEveryTime(unsorted, comparator, configuration);
+      checksum += cachedArray(datastore);
+    }
+
+    long before = allocated();
+    for (int i = 0; i < ENTITIES; i++) {
+      checksum += sortEveryTime(unsorted, comparator, configuration);
+    }
+    long sorted = allocated() - before;
+
+    before = allocated();
+    for (int i = 0; i < ENTITIES; i++) {
+      checksum += cachedArray(datastore);
+    }
+    long cached = allocated() - before;
+
+    System.out.println("TreeSet per entity:     " + sorted / ENTITIES + " bytes");
+    System.out.println("ClassModel per entity:  " + cached / ENTITIES + " bytes");
+    System.out.println("(checksum " + checksum + ")");
+
+    assertTrue(cached < sorted);
+  }
+
+  // what getSortedAccessibleFields and the stored() checks used to do
+  private static int sortEveryTime(Collection<Field> unsorted, Comparator<Field> comparator, Configuration configuration) {
+    Set<Field> fields = new TreeSet<Field>(comparator);
+    fields.addAll(unsorted);
+    int stored = 0;
+    for (Field field : fields) {
+      if (configuration.store(field)) {
+        stored++;
+      }
+    }
+    return stored;
+  }
+
+  private static int cachedArray(TranslatorObjectDatastore datastore) {
+    Field[] fields = datastore.model(Wide.class).getStoredFields();
+    int stored = 0;
+    for (int i = 0; i < fields.length; i++) {
+      stored++;
+    }
+    return stored;
+  }
+
+  private static long allocated() {
+    java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (bean instanceof com.sun.management.ThreadMXBean) {
+      return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+    throw new IllegalStateException("Allocation counting needs a HotSpot JVM");
+  }
+}
@@ -0,0 +1,59 @@
+package com.google.code.twig.standard;
+
+import com.google.code.twig.LocalDatastoreTestCase;
+import com.google.code.twig.annotation.AnnotationObjectDatastore;
+import com.google.code.twig.configuration.Configuration;
+import com.google.code.twig.configuration.DefaultConfiguration;
+import com.google.code.twig.test.festival.Type_with__under___scores;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class ModelBootstrapTest extends LocalDatastoreTestCase {
+
+  @After
+  public void unregisterKindNames() {
+    // other tests expect the type to be encoded by its class name
+    DefaultConfiguration.unregisterTypeName(Type_with__under___scores.class);
+  }
+
+  @Test
+  public void registersKindNamesOfScannedModels() {
+    AnnotationObjectDatastore datastore = new AnnotationObjectDatastore();
+
+    ModelBootstrap.Report report = new ModelBootstrap(datastore)
+            .scan("com.google.code.twig.test.festival")
+            .warmUp();
+
+    assertTrue(report.getTypes().contains(Type_with__under___scores.class));
+
+    Configuration configuration = datastore.getConfiguration();
+    assertThat(configuration.typeToKind(Type_with__under___scores.class), is(equalTo("twu:2")));
+    assertThat(configuration.kindToType("twu:2"), is(equalTo((Object) Type_with__under___scores.class)));
+  }
+
+  @Test
+  public void canWarmUpTheSameModelsAgain() {
+    new ModelBootstrap(new AnnotationObjectDatastore()).type(Type_with__under___scores.class).warmUp();
+
+    ModelBootstrap.Report report = new ModelBootstrap(new AnnotationObjectDatastore())
+            .scan("com.google.code.twig.test.festival")
+            .warmUp();
+
+    assertTrue(report.getTypes().contains(Type_with__under___scores.class));
+  }
+
+  @Test
+  public void warmedModelsAreSharedWithNewDatastores() {
+    TranslatorObjectDatastore datastore = new AnnotationObjectDatastore();
+    new ModelBootstrap(datastore).type(Type_with__under___scores.class).warmUp();
+
+    TranslatorObjectDatastore another = new AnnotationObjectDatastore();
+    assertSame(datastore.model(Type_with__under___scores.class), another.model(Type_with__under___scores.class));
+  }
+}
@@ -1,6 +1,7 @@
 package com.google.code.twig.standard;
 
 import com.google.code.twig.test.festival.Band;
+import com.vercer.convert.Converter;
 import junit.framework.Assert;
 
 import org.junit.Before;
@@ -10,19 +11,24 @@ import com.google.appengine.api.datastore.Entity;
 import com.google.appengine.api.datastore.EntityNotFoundException;
 import com.google.appengine.api.datastore.Key;
 import com.google.code.twig.LocalDatastoreTestCase;
+import com.google.code.twig.Settings;
 import com.google.code.twig.annotation.AnnotationObjectDatastore;
+import com.google.code.twig.standard.TranslatorObjectDatastore.ObjectFieldTranslator;
 import com.google.code.twig.test.space.Mission;
 import com.google.code.twig.test.space.Pilot;
 import com.google.code.twig.test.space.RocketShip;
 import com.google.code.twig.test.space.SpaceStation;
 import com.google.code.twig.test.space.RocketShip.Planet;
 
+import java.lang.reflect.Field;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 import static com.google.code.twig.standard.TranslatorObjectDatastoreTest.BandBuilder.aNewBand;
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
 import static org.junit.Assert.assertThat;
 
 public class TranslatorObjectDatastoreTest extends LocalDatastoreTestCase {
@@ -341,6 +347,114 @@ public class TranslatorObjectDatastoreTest extends LocalDatastoreTestCase {
     assertThat(entityGroups.size(), is(2));
   }
 
+  @Test
+  public void classModelIsSortedByPropertyNameAndReused() {
+
+    TranslatorObjectDatastore translator = datastore;
+    ClassModel model = translator.model(Band.class);
+
+    List<String> names = new ArrayList<String>();
+    for (FieldModel field : model.getFields()) {
+      names.add(field.getName());
+    }
+
+    assertThat(names, is(equalTo(Arrays.asList("albums", "hair", "locale", "members", "name"))));
+    assertThat(model.getIdField().getName(), is(equalTo("name")));
+    assertThat(model.getKeyField(), is(nullValue()));
+    Assert.assertSame(model, translator.model(Band.class));
+    Field id = model.getIdField().getField();
+    Assert.assertSame(translator.fieldTranslator(id), translator.fieldTranslator(id));
+  }
+
+  @Test
+  public void storedFieldsAreWalkedFromOneCachedArray() {
+    TranslatorObjectDatastore translator = datastore;
+    ObjectFieldTranslator fields = (ObjectFieldTranslator) translator.getFieldTranslator();
+
+    Field[] stored = fields.getSortedStoredFields(Band.class);
+    Assert.assertSame(stored, fields.getSortedStoredFields(Band.class));
+    Assert.assertSame(translator.model(Band.class).getStoredFields(), stored);
+    assertThat(stored.length, is(translator.model(Band.class).getStoredFieldModels().length));
+  }
+
+  @Test
+  public void datastoresWithTheSameConfigurationShareModels() {
+    TranslatorObjectDatastore another = new AnnotationObjectDatastore();
+
+    Assert.assertSame(((TranslatorObjectDatastore) datastore).model(Band.class), another.model(Band.class));
+
+    // each datastore has its own translators
+    Field id = another.model(Band.class).getIdField().getField();
+    Assert.assertNotSame(((TranslatorObjectDatastore) datastore).fieldTranslator(id), another.fieldTranslator(id));
+  }
+
+  static class Marker {
+  }
+
+  static class StringToMarker implements Converter<String, Marker> {
+    @Override
+    public Marker convert(String source) {
+      return new Marker();
+    }
+  }
+
+  @Test
+  public void entitiesAreGotLaterWithTheDefaultSettings() throws Exception {
+    Key key = datastore.store(new SpaceStation("default"));
+
+    Map<Key, Entity> entities = datastore.serviceGetLater(Collections.singleton(key), null).get();
+    Assert.assertEquals("default", entities.get(key).getKey().getName());
+  }
+
+  @Test
+  public void datastoresWithEqualSettingsShareServices() {
+    TranslatorObjectDatastore first = new AnnotationObjectDatastore(Settings.builder().deadline(3, TimeUnit.SECONDS).build());
+    TranslatorObjectDatastore second = new AnnotationObjectDatastore(Settings.builder().deadline(3, TimeUnit.SECONDS).build());
+
+    Assert.assertSame(first.asyncService(null), second.asyncService(null));
+  }
+
+  @Test
+  public void datastoresOfTheSameClassShareConverters() {
+    AnnotationObjectDatastore another = new AnnotationObjectDatastore();
+
+    Assert.assertSame(((LayeredConverterRegistry) datastore.registry).getShared(),
+            ((LayeredConverterRegistry) another.registry).getShared());
+  }
+
+  @Test
+  public void convertersRegisteredWithOneDatastoreAreNotShared() {
+    AnnotationObjectDatastore another = new AnnotationObjectDatastore();
+
+    datastore.registry.register(new StringToMarker());
+
+    Assert.assertTrue(datastore.registry.convert("marked", Marker.class) instanceof Marker);
+    Assert.assertTrue(datastore.getTypeConverter().convert("marked", Marker.class) instanceof Marker);
+    Assert.assertNull(another.registry.convert("marked", Marker.class));
+
+    // the shared converters are still used
+    Assert.assertEquals("1", datastore.registry.convert(1, String.class));
+  }
+
+  @Test
+  public void entitiesOfOneKindWithDifferentPropertiesAreDecoded() throws EntityNotFoundException {
+    datastore.store(aNewBand().withName("First Band").build());
+    Key secondKey = datastore.store(aNewBand().withName("Second Band").build());
+    datastore.store(aNewBand().withName("Third Band").build());
+
+    // stored by another version of the model
+    Entity entity = datastore.getDefaultService().get(secondKey);
+    entity.removeProperty("locale");
+    entity.setProperty("manager", "Brian");
+    datastore.getDefaultService().put(entity);
+
+    datastore.disassociateAll();
+
+    assertThat(datastore.load(Band.class, "First Band").getName(), is(equalTo("First Band")));
+    assertThat(datastore.load(Band.class, "Second Band").getName(), is(equalTo("Second Band")));
+    assertThat(datastore.load(Band.class, "Third Band").getName(), is(equalTo("Third Band")));
+  }
+
   static class BandBuilder {
 
     private String name;
@@ -15,10 +15,12 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -34,6 +36,8 @@ import com.google.code.twig.Settings;
 import com.google.code.twig.annotation.AnnotationObjectDatastore;
 import com.google.code.twig.annotation.Embedded;
 import com.google.code.twig.annotation.Id;
+import com.google.code.twig.standard.TranslatorObjectDatastore;
+import com.google.code.twig.standard.BaseObjectDatastore.Statistics;
 import com.google.code.twig.test.festival.Band.HairStyle;
 import com.google.code.twig.util.PredicateToRestrictionAdaptor;
 import com.google.common.base.Predicate;
@@ -343,6 +347,20 @@ public class MusicFestivalTestCase extends LocalDatastoreTestCase
 		assertTrue(dbs.hasNext());
 	}
 
+	@Test
+	public void asyncQueriesReturnTheSameResults() throws ParseException, InterruptedException, ExecutionException
+	{
+		MusicFestival musicFestival = createFestival();
+		datastore.store(musicFestival);
+		datastore.disassociateAll();
+
+		Future<List<RockBand>> rockBands = datastore.find().type(RockBand.class).returnAll().later();
+		Future<List<DanceBand>> danceBands = datastore.find().type(DanceBand.class).returnAll().later();
+
+		assertEquals(Iterators.size(datastore.find().type(RockBand.class).now()), rockBands.get().size());
+		assertEquals(Iterators.size(datastore.find().type(DanceBand.class).now()), danceBands.get().size());
+	}
+
 	@Test
 	public void asyncStoreSingle() throws ParseException, InterruptedException, ExecutionException
 	{
@@ -462,6 +480,156 @@ public class MusicFestivalTestCase extends LocalDatastoreTestCase
 		assertEquals(7, count);
 	}
 	
+	@Test
+	public void asyncCountAndParents() throws ParseException, InterruptedException, ExecutionException
+	{
+		MusicFestival musicFestival = createFestival();
+		datastore.store(musicFestival);
+		datastore.disassociateAll();
+		
+		Future<Integer> count = datastore.find().type(Musician.class).returnCount().later();
+		Future<Iterator<Band>> parents = datastore.find().type(Album.class).<Band>returnParents().later();
+		
+		assertEquals(7, count.get().intValue());
+		assertEquals(Iterators.size(datastore.find().type(Album.class).<Band>returnParents().now()), Iterators.size(parents.get()));
+	}
+	
+	@Test
+	public void asyncCountKeepsTheRangeOfTheCommand() throws ParseException, InterruptedException, ExecutionException
+	{
+		MusicFestival musicFestival = createFestival();
+		datastore.store(musicFestival);
+		
+		Future<Integer> limited = datastore.find().type(Musician.class).fetchMaximum(5).returnCount().later();
+		Future<Integer> offset = datastore.find().type(Musician.class).startFrom(4).returnCount().later();
+		
+		assertEquals(5, limited.get().intValue());
+		assertEquals(3, offset.get().intValue());
+	}
+	
+	@Test
+	public void asyncResultsCanBeWaitedForWithATimeout() throws Exception
+	{
+		MusicFestival musicFestival = createFestival();
+		datastore.store(musicFestival);
+		datastore.disassociateAll();
+		
+		Future<QueryResultIterator<Musician>> musicians = datastore.find().type(Musician.class).later();
+		Future<Integer> count = datastore.find().type(Musician.class).returnCount().later();
+		Future<Iterator<Band>> parents = datastore.find().type(Album.class).<Band>returnParents().later();
+		assertFalse(count.isDone());
+		
+		assertEquals(7, Iterators.size(musicians.get(1, TimeUnit.SECONDS)));
+		assertEquals(7, count.get(1, TimeUnit.SECONDS).intValue());
+		assertTrue(parents.get(1, TimeUnit.SECONDS).hasNext());
+	}
+	
+	@Test
+	public void asyncParentsStartGettingTheFirstChunkWhenAskedFor() throws ParseException, InterruptedException, ExecutionException
+	{
+		MusicFestival musicFestival = createFestival();
+		datastore.store(musicFestival);
+		datastore.disassociateAll();
+		
+		Statistics statistics = ((TranslatorObjectDatastore) datastore).getStatistics();
+		int gets = statistics.getDatastoreGets();
+		
+		// returns without reading the results of the child query
+		Future<Iterator<Band>> parents = datastore.find().type(Album.class).<Band>returnParents().later();
+		assertFalse(parents.isDone());
+		assertEquals(gets, statistics.getDatastoreGets());
+		
+		// the first chunk is requested before the parents are iterated
+		Iterator<Band> bands = parents.get();
+		assertEquals(gets + 1, statistics.getDatastoreGets());
+		
+		assertEquals(Iterators.size(datastore.find().type(Album.class).<Band>returnParents().now()), Iterators.size(bands));
+	}
+	
+	@Test
+	public void prefetchedRelationsAreDecoded()
+	{
+		for (int i = 0; i < 3; i++)
+		{
+			Band band = new Band();
+			band.name = "Band " + i;
+			band.albums = new ArrayList<Album>();
+			for (int j = 0; j <= i; j++)
+			{
+				Album album = new Album();
+				album.name = "Album " + i + j;
+				band.albums.add(album);
+			}
+			datastore.store(band);
+		}
+		datastore.disassociateAll();
+		
+		Statistics statistics = ((TranslatorObjectDatastore) datastore).getStatistics();
+		int start = statistics.getDatastoreGets();
+		
+		List<String> albums = new ArrayList<String>();
+		Iterator<Band> bands = datastore.find().type(Band.class).now();
+		while (bands.hasNext())
+		{
+			albums.add(bands.next().albums.toString());
+		}
+		int gets = statistics.getDatastoreGets() - start;
+		
+		datastore.disassociateAll();
+		start = statistics.getDatastoreGets();
+		
+		List<String> prefetched = new ArrayList<String>();
+		bands = datastore.find().type(Band.class).prefetchRelations(2).now();
+		while (bands.hasNext())
+		{
+			prefetched.add(bands.next().albums.toString());
+		}
+		int prefetchedGets = statistics.getDatastoreGets() - start;
+		
+		assertEquals(3, prefetched.size());
+		assertEquals(albums, prefetched);
+		
+		// the albums of each band were got separately but prefetching
+		// gets the relations of all bands in one bulk get per level
+		assertEquals(3, gets);
+		assertEquals(2, prefetchedGets);
+	}
+	
+	@Test
+	public void pipelinedQueryReturnsAllChunks()
+	{
+		for (int i = 0; i < 7; i++)
+		{
+			Band band = new Band();
+			band.name = "Band " + i;
+			datastore.store(band);
+		}
+		datastore.disassociateAll();
+		
+		List<String> names = new ArrayList<String>();
+		Iterator<Band> bands = datastore.find().type(Band.class).now();
+		while (bands.hasNext())
+		{
+			names.add(bands.next().name);
+		}
+		
+		List<String> pipelined = new ArrayList<String>();
+		bands = datastore.find().type(Band.class).fetchNextBy(2).pipeline(2).now();
+		while (bands.hasNext())
+		{
+			pipelined.add(bands.next().name);
+		}
+		assertEquals(names, pipelined);
+		
+		List<String> limited = new ArrayList<String>();
+		bands = datastore.find().type(Band.class).fetchNextBy(2).fetchMaximum(5).startFrom(1).pipeline(3).now();
+		while (bands.hasNext())
+		{
+			limited.add(bands.next().name);
+		}
+		assertEquals(names.subList(1, 6), limited);
+	}
+	
 	@Test
 	public void testClassNameEscape()
 	{
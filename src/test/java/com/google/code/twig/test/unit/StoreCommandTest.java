@@ -1,15 +1,30 @@
 package com.google.code.twig.test.unit;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import com.google.appengine.api.datastore.DatastoreTimeoutException;
+import com.google.appengine.api.datastore.Key;
+
+import com.google.code.twig.ExponentialRetryPolicy;
 import com.google.code.twig.LocalDatastoreTestCase;
 import com.google.code.twig.ObjectDatastore;
+import com.google.code.twig.RetryPolicy;
+import com.google.code.twig.Settings;
 import com.google.code.twig.annotation.AnnotationObjectDatastore;
 import com.google.code.twig.annotation.Child;
 import com.google.code.twig.annotation.Entity;
 import com.google.code.twig.annotation.Id;
+import com.google.code.twig.annotation.Version;
 
 public class StoreCommandTest extends LocalDatastoreTestCase
 {
@@ -36,12 +51,32 @@ public class StoreCommandTest extends LocalDatastoreTestCase
 	{
 		@Id long id;
 		String name;
+		ChildClass()
+		{
+		}
 		public ChildClass(String string)
 		{
 			this.name = string;
 		}
 	}
 	
+	@Entity(kind="pooled", allocateIdsBy=10)
+	public static class PooledClass
+	{
+		@Id long id;
+	}
+	
+	@Version
+	public static class VersionedClass
+	{
+		@Id String name;
+		int value;
+		public VersionedClass(String name)
+		{
+			this.name = name;
+		}
+	}
+	
 	@Test
 	public void allocateIdsToParent()
 	{
@@ -52,6 +87,24 @@ public class StoreCommandTest extends LocalDatastoreTestCase
 		datastore.store(parent);
 	}
 	
+	@Test
+	public void allocatedIdsAreSharedBetweenDatastores()
+	{
+		ObjectDatastore other = new AnnotationObjectDatastore();
+		
+		// a kind not used by other tests so no ids are left from a previous datastore
+		// more than one block of ids so the pool is refilled
+		Set<Long> ids = new HashSet<Long>();
+		for (int i = 0; i < 25; i++)
+		{
+			ObjectDatastore storing = i % 2 == 0 ? datastore : other;
+			Key key = storing.store(new PooledClass());
+			Assert.assertTrue(key.getId() > 0);
+			ids.add(key.getId());
+		}
+		Assert.assertEquals(25, ids.size());
+	}
+	
 	@Test 
 	public void batchStoreAndUpdate()
 	{
@@ -70,4 +123,142 @@ public class StoreCommandTest extends LocalDatastoreTestCase
 		Assert.assertTrue(child1.id != 0);
 	}
 	
+	@Test
+	public void updateAllChecksVersionsTogether()
+	{
+		VersionedClass first = new VersionedClass("first");
+		VersionedClass second = new VersionedClass("second");
+		datastore.storeAll(Arrays.asList(first, second));
+		
+		// instances from another session are checked against the stored version
+		ObjectDatastore other = new AnnotationObjectDatastore();
+		VersionedClass otherFirst = other.associate(new VersionedClass("first"), datastore.associatedKey(first), 1);
+		VersionedClass otherSecond = other.associate(new VersionedClass("second"), datastore.associatedKey(second), 1);
+		other.updateAll(Arrays.asList(otherFirst, otherSecond));
+		Assert.assertEquals(2, other.version(otherFirst));
+		Assert.assertEquals(2, other.version(otherSecond));
+		
+		// both stale instances are reported by the same check
+		ObjectDatastore stale = new AnnotationObjectDatastore();
+		VersionedClass staleFirst = stale.associate(new VersionedClass("first"), datastore.associatedKey(first), 1);
+		VersionedClass staleSecond = stale.associate(new VersionedClass("second"), datastore.associatedKey(second), 1);
+		try
+		{
+			stale.updateAll(Arrays.asList(staleFirst, staleSecond));
+			Assert.fail();
+		}
+		catch (IllegalStateException e)
+		{
+			Assert.assertTrue(e.getMessage().contains("first"));
+			Assert.assertTrue(e.getMessage().contains("second"));
+		}
+	}
+	
+	@Test
+	public void largeStoreIsSentInChunks()
+	{
+		ObjectDatastore chunked = new AnnotationObjectDatastore(Settings.builder().batchSize(4).concurrentBatches(2).build());
+		
+		List<ChildClass> children = new ArrayList<ChildClass>();
+		for (int i = 0; i < 25; i++)
+		{
+			children.add(new ChildClass("child " + i));
+		}
+		Map<ChildClass, Key> keys = chunked.storeAll(children);
+		
+		// keys are returned in the same order as the chunks were sent
+		Assert.assertEquals(25, keys.size());
+		ObjectDatastore loader = new AnnotationObjectDatastore();
+		for (ChildClass child : children)
+		{
+			ChildClass loaded = loader.load(keys.get(child));
+			Assert.assertEquals(child.name, loaded.name);
+		}
+		
+		chunked.deleteAll(children);
+		chunked.disassociateAll();
+		for (ChildClass child : children)
+		{
+			Assert.assertNull(chunked.load(keys.get(child)));
+		}
+	}
+	
+	@Test
+	public void deleteAllOfTypeInConcurrentChunks()
+	{
+		ObjectDatastore chunked = new AnnotationObjectDatastore(Settings.builder().batchSize(3).concurrentBatches(2).build());
+		
+		List<ChildClass> children = new ArrayList<ChildClass>();
+		for (int i = 0; i < 10; i++)
+		{
+			children.add(new ChildClass("child " + i));
+		}
+		chunked.storeAll(children);
+		
+		chunked.deleteAll(ChildClass.class);
+		
+		Assert.assertFalse(chunked.find(ChildClass.class).hasNext());
+		Assert.assertFalse(chunked.isAssociated(children.get(0)));
+	}
+	
+	@Test
+	public void retryPolicyIsUsedForEveryCall()
+	{
+		final List<Integer> attempts = new ArrayList<Integer>();
+		RetryPolicy counting = new RetryPolicy()
+		{
+			public int getAttempts()
+			{
+				return 1;
+			}
+			public boolean isRetryable(RuntimeException e)
+			{
+				return false;
+			}
+			public long getDelay(int retry)
+			{
+				return 0;
+			}
+			public Long getDeadline(int attempt)
+			{
+				attempts.add(attempt);
+				return null;
+			}
+		};
+		ObjectDatastore retrying = new AnnotationObjectDatastore(Settings.builder().retryPolicy(counting).build());
+		
+		Key key = retrying.store(new ChildClass("retried"));
+		Assert.assertEquals(1, attempts.size());
+		
+		retrying.disassociateAll();
+		Assert.assertEquals("retried", ((ChildClass) retrying.load(key)).name);
+		Assert.assertEquals(2, attempts.size());
+		
+		Assert.assertTrue(retrying.find(ChildClass.class).hasNext());
+		Assert.assertEquals(3, attempts.size());
+		Assert.assertEquals(Arrays.asList(0, 0, 0), attempts);
+	}
+	
+	@Test
+	public void exponentialDelaysAreBoundedWithJitter()
+	{
+		RetryPolicy policy = ExponentialRetryPolicy.builder()
+			.initialDelay(100, TimeUnit.MILLISECONDS)
+			.maximumDelay(1, TimeUnit.SECONDS)
+			.jitter(0.5)
+			.build();
+		
+		for (int i = 0; i < 20; i++)
+		{
+			long first = policy.getDelay(1);
+			Assert.assertTrue(first >= 50 && first <= 100);
+			long third = policy.getDelay(3);
+			Assert.assertTrue(third >= 200 && third <= 400);
+			long capped = policy.getDelay(10);
+			Assert.assertTrue(capped >= 500 && capped <= 1000);
+		}
+		
+		Assert.assertTrue(policy.isRetryable(new DatastoreTimeoutException("slow")));
+		Assert.assertFalse(policy.isRetryable(new IllegalArgumentException()));
+	}
 }
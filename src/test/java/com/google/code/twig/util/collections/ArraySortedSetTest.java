@@ -0,0 +1,110 @@
+package com.google.code.twig.util.collections;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ArraySortedSetTest
+{
+	private final ArraySortedSet<Integer> set = new ArraySortedSet<Integer>(new Integer[] { 1, 3, 5, 7, 9, 11 });
+
+	private static List<Object> elements(Collection<?> set)
+	{
+		return Arrays.asList(set.toArray());
+	}
+
+	@Test
+	public void boundsAreExclusiveAtTheEnd()
+	{
+		Assert.assertEquals(Arrays.<Object>asList(1, 3), elements(set.headSet(5)));
+		Assert.assertEquals(Arrays.<Object>asList(1, 3), elements(set.headSet(4)));
+		Assert.assertEquals(Arrays.<Object>asList(), elements(set.headSet(1)));
+		Assert.assertEquals(elements(set), elements(set.headSet(100)));
+
+		Assert.assertEquals(Arrays.<Object>asList(5, 7, 9, 11), elements(set.tailSet(5)));
+		Assert.assertEquals(Arrays.<Object>asList(5, 7, 9, 11), elements(set.tailSet(4)));
+		Assert.assertEquals(elements(set), elements(set.tailSet(0)));
+		Assert.assertEquals(Arrays.<Object>asList(), elements(set.tailSet(12)));
+
+		Assert.assertEquals(Arrays.<Object>asList(3, 5, 7), elements(set.subSet(3, 9)));
+		Assert.assertEquals(Arrays.<Object>asList(), elements(set.subSet(4, 4)));
+	}
+
+	@Test
+	public void slicesOfSlicesKeepTheirOffset()
+	{
+		ArraySortedSet<Integer> slice = set.slice(1, 5);
+		Assert.assertEquals(Arrays.<Object>asList(3, 5, 7, 9), elements(slice));
+		Assert.assertEquals(4, slice.size());
+		Assert.assertEquals(Integer.valueOf(3), slice.first());
+		Assert.assertEquals(Integer.valueOf(9), slice.last());
+		Assert.assertEquals(Integer.valueOf(5), slice.get(1));
+
+		// bounds outside the slice do not reach the rest of the array
+		Assert.assertEquals(Arrays.<Object>asList(3, 5), elements(slice.headSet(7)));
+		Assert.assertEquals(elements(slice), elements(slice.headSet(11)));
+		Assert.assertEquals(elements(slice), elements(slice.tailSet(1)));
+		Assert.assertEquals(Arrays.<Object>asList(), elements(slice.tailSet(11)));
+		Assert.assertEquals(Arrays.<Object>asList(5, 7), elements(slice.subSet(5, 9)));
+
+		ArraySortedSet<Integer> inner = slice.slice(1, 3).slice(1, 2);
+		Assert.assertEquals(Arrays.<Object>asList(7), elements(inner));
+		Assert.assertEquals(Integer.valueOf(7), inner.first());
+		Assert.assertEquals(Integer.valueOf(7), inner.last());
+	}
+
+	@Test
+	public void emptySlicesHaveNoElements()
+	{
+		ArraySortedSet<Integer> empty = set.slice(3, 3);
+		Assert.assertTrue(empty.isEmpty());
+		Assert.assertFalse(empty.iterator().hasNext());
+		Assert.assertEquals(0, empty.toArray().length);
+
+		try
+		{
+			empty.first();
+			Assert.fail();
+		}
+		catch (NoSuchElementException e)
+		{
+		}
+
+		try
+		{
+			empty.last();
+			Assert.fail();
+		}
+		catch (NoSuchElementException e)
+		{
+		}
+	}
+
+	@Test
+	public void indexesOutsideTheSliceAreRejected()
+	{
+		ArraySortedSet<Integer> slice = set.slice(1, 3);
+
+		try
+		{
+			slice.get(2);
+			Assert.fail();
+		}
+		catch (IndexOutOfBoundsException e)
+		{
+		}
+
+		try
+		{
+			slice.slice(0, 3);
+			Assert.fail();
+		}
+		catch (IndexOutOfBoundsException e)
+		{
+		}
+	}
+}